@@ -0,0 +1,40 @@
+package dev.nullzwo.jqwik.xml.benchmark;
+
+import dev.nullzwo.jqwik.xml.XmlArbitraries;
+import net.jqwik.api.RandomGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static dev.nullzwo.jqwik.xml.XmlArbitraries.OptionalAttributes.BOTH;
+
+/**
+ * Generates samples the way a jqwik property does. Only schemas without target namespace
+ * can be used with {@link XmlArbitraries#fromXsdFile}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @Param({"SMALL", "LARGE", "RECURSIVE"})
+    public Fixture fixture;
+
+    private RandomGenerator<byte[]> generator;
+    private Random random;
+
+    @Setup
+    public void setup() {
+        generator = XmlArbitraries.fromXsdFile(fixture.uri(), fixture.rootElement().getLocalPart(), BOTH).generator(1000);
+        random = new Random(42);
+    }
+
+    @Benchmark
+    public byte[] next() {
+        return generator.next(random).value();
+    }
+}
@@ -0,0 +1,33 @@
+package dev.nullzwo.jqwik.xml.benchmark;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Schemas in {@code src/jmh/resources/xsd} used by all benchmarks.
+ */
+public enum Fixture {
+    /** the shiporder example with a handful of elements */
+    SMALL("small.xsd", "shiporder"),
+    /** namespaced purchase order with choices, all groups, substitution groups, abstract types and facets */
+    MEDIUM("medium.xsd", "{urn:jqwik-xml:purchase-order}purchaseOrder"),
+    /** 48 complex types in four levels, producing documents with thousands of elements */
+    LARGE("large.xsd", "document"),
+    /** recursive sections, lists and mixed content */
+    RECURSIVE("recursive.xsd", "book");
+
+    private final String file;
+    private final String root;
+
+    Fixture(String file, String root) {
+        this.file = file;
+        this.root = root;
+    }
+
+    public String uri() {
+        return Fixture.class.getResource("/xsd/" + file).toString();
+    }
+
+    public QName rootElement() {
+        return QName.valueOf(root);
+    }
+}
@@ -0,0 +1,64 @@
+package dev.nullzwo.jqwik.xml.benchmark;
+
+import jlibs.core.util.RandomUtil;
+import jlibs.xml.sax.SAXDelegate;
+import jlibs.xml.sax.XMLDocument;
+import jlibs.xml.xsd.XSConfig;
+import jlibs.xml.xsd.XSInstance;
+import jlibs.xml.xsd.XSParser;
+import jlibs.xml.xsd.XSPlan;
+import org.apache.xerces.xs.XSModel;
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.namespace.QName;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures sample generation only, the sax events are discarded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerationBenchmark {
+
+    @Param
+    public Fixture fixture;
+
+    private XSModel model;
+    private QName rootElement;
+    private XSConfig config;
+    private XSPlan plan;
+    private XSInstance instance;
+    private XMLDocument doc;
+
+    @Setup
+    public void setup() {
+        model = new XSParser().parse(fixture.uri());
+        rootElement = fixture.rootElement();
+        config = new XSConfig();
+        plan = XSPlan.compile(model, rootElement, config);
+        instance = new XSInstance(new RandomUtil(new Random(42)), config);
+        doc = new XMLDocument(new SAXDelegate());
+    }
+
+    @Benchmark
+    public XSPlan compile() {
+        return XSPlan.compile(model, rootElement, config);
+    }
+
+    @Benchmark
+    public XMLDocument generate() {
+        instance.generate(plan, doc);
+        return doc;
+    }
+
+    @Benchmark
+    public XMLDocument compileAndGenerate() {
+        instance.generate(model, rootElement, doc);
+        return doc;
+    }
+}
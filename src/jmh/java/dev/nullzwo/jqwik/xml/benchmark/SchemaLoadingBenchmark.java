@@ -0,0 +1,31 @@
+package dev.nullzwo.jqwik.xml.benchmark;
+
+import jlibs.xml.xsd.XSParser;
+import org.apache.xerces.xs.XSModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaLoadingBenchmark {
+
+    @Param
+    public Fixture fixture;
+
+    private String uri;
+
+    @Setup
+    public void setup() {
+        uri = fixture.uri();
+    }
+
+    @Benchmark
+    public XSModel parse() {
+        return new XSParser().parse(uri);
+    }
+}
@@ -0,0 +1,63 @@
+package dev.nullzwo.jqwik.xml.benchmark;
+
+import jlibs.core.io.ByteArrayOutputStream2;
+import jlibs.xml.sax.SAXDelegate;
+import jlibs.xml.sax.XMLDocument;
+import jlibs.xml.sax.XMLWriter;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.SAXException;
+
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.stream.StreamResult;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes the same document of {@code elements} elements, each with an attribute and text,
+ * through {@link XMLDocument}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"10", "1000"})
+    public int elements;
+
+    private XMLWriter writer;
+    private ByteArrayOutputStream2 out;
+
+    @Setup
+    public void setup() {
+        writer = new XMLWriter(true, 4);
+        out = new ByteArrayOutputStream2();
+    }
+
+    private static void write(XMLDocument doc, int elements) throws SAXException {
+        doc.startDocument();
+        doc.startElement("urn:jqwik-xml:benchmark", "root");
+        for (int i = 0; i < elements; i++) {
+            doc.startElement("urn:jqwik-xml:benchmark", "item");
+            doc.addAttribute("id", "item" + i);
+            doc.addText("some text & more text <" + i + ">");
+            doc.endElement();
+        }
+        doc.endElement();
+        doc.endDocument();
+    }
+
+    @Benchmark
+    public int xmlWriter() throws SAXException {
+        write(new XMLDocument(new SAXDelegate(writer)), elements);
+        return writer.size();
+    }
+
+    @Benchmark
+    public int transformerHandler() throws SAXException, TransformerConfigurationException {
+        out.reset();
+        write(new XMLDocument(new StreamResult(out), true, 4, null), elements);
+        return out.size();
+    }
+}
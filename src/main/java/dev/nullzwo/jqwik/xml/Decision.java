@@ -0,0 +1,212 @@
+package dev.nullzwo.jqwik.xml;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A random value used while generating a sample, as recorded by {@link DecisionRandom}.
+ * <p>
+ * Every value knows its range and its simplest value, its {@code target}, which is what
+ * shrinking moves it towards. Values used for one repetition of a particle, or one
+ * branch of a choice, are kept together in a {@link Group}.
+ */
+abstract class Decision {
+
+    static long target(long min, long max) {
+        return min > 0 ? min : max < 0 ? max : 0;
+    }
+
+    static double target(double min, double max) {
+        return min > 0 ? min : max < 0 ? max : 0;
+    }
+
+    /**
+     * Number of values in this decision, and how far they are from their targets.
+     */
+    abstract void measure(long[] distance);
+
+    static final class Choice extends Decision {
+        final long value;
+        final long min;
+        final long max;
+        final long target;
+
+        Choice(long value, long min, long max, long target) {
+            this.value = value;
+            this.min = min;
+            this.max = max;
+            this.target = target;
+        }
+
+        long clamp(long min, long max) {
+            return value < min ? min : value > max ? max : value;
+        }
+
+        Choice with(long value) {
+            return new Choice(value, min, max, target);
+        }
+
+        /**
+         * halfway between value and target, computed without overflow
+         */
+        long halfway() {
+            return value > target
+                    ? target + ((value - target) >>> 1)
+                    : target - ((target - value) >>> 1);
+        }
+
+        @Override
+        void measure(long[] distance) {
+            distance[0]++;
+            long d = value > target ? value - target : target - value;
+            distance[1] = add(distance[1], d < 0 ? Long.MAX_VALUE : d);
+        }
+
+        @Override
+        public String toString() {
+            return Long.toString(value);
+        }
+    }
+
+    static final class Real extends Decision {
+        final double value;
+        final double min;
+        final double max;
+        final double target;
+
+        Real(double value, double min, double max, double target) {
+            this.value = value;
+            this.min = min;
+            this.max = max;
+            this.target = target;
+        }
+
+        double clamp(double min, double max) {
+            return value < min ? min : value > max ? max : value;
+        }
+
+        Real with(double value) {
+            return new Real(value, min, max, target);
+        }
+
+        @Override
+        void measure(long[] distance) {
+            distance[0]++;
+            distance[1] = add(distance[1], (long) Math.ceil(Math.min(Math.abs(value - target), Long.MAX_VALUE)));
+        }
+
+        @Override
+        public String toString() {
+            return Double.toString(value);
+        }
+    }
+
+    static final class Group extends Decision {
+        static final Group EMPTY = new Group(new Decision[0]);
+
+        final Decision[] children;
+
+        Group(Decision[] children) {
+            this.children = children;
+        }
+
+        @Override
+        void measure(long[] distance) {
+            distance[0]++;
+            for (Decision child : children) {
+                child.measure(distance);
+            }
+        }
+
+        /**
+         * Returns simpler variants of this group: first those changing its own children,
+         * removing groups before simplifying values, then those changing nested groups.
+         */
+        Stream<Group> shrink() {
+            Stream<Group> own = IntStream.range(0, children.length).boxed().flatMap(this::shrinkChild);
+            Stream<Group> nested = IntStream.range(0, children.length)
+                    .filter(i -> children[i] instanceof Group)
+                    .boxed()
+                    .flatMap(i -> ((Group) children[i]).shrink().map(group -> with(i, group)));
+            return Stream.concat(own, nested);
+        }
+
+        private Stream<Group> shrinkChild(int i) {
+            Decision child = children[i];
+            if (child instanceof Group) {
+                Stream.Builder<Group> candidates = Stream.builder();
+                Group withoutCount = withoutRepetition(i);
+                if (withoutCount != null) {
+                    candidates.add(withoutCount);
+                }
+                candidates.add(without(i));
+                if (((Group) child).children.length > 0) {
+                    candidates.add(with(i, EMPTY));
+                }
+                return candidates.build();
+            } else if (child instanceof Choice) {
+                Choice choice = (Choice) child;
+                if (choice.value == choice.target) {
+                    return Stream.empty();
+                }
+                long halfway = choice.halfway();
+                return halfway == choice.target || halfway == choice.value
+                        ? Stream.of(with(i, choice.with(choice.target)))
+                        : Stream.of(with(i, choice.with(choice.target)), with(i, choice.with(halfway)));
+            } else {
+                Real real = (Real) child;
+                if (real.value == real.target) {
+                    return Stream.empty();
+                }
+                return Stream.of(with(i, real.with(real.target)),
+                        with(i, real.with(Math.rint(real.value))),
+                        with(i, real.with(real.target + (real.value - real.target) / 2)));
+            }
+        }
+
+        /**
+         * Removes the group at index i, and decrements the count preceding the groups around it,
+         * i.e. drops one repetition of a particle.
+         */
+        private Group withoutRepetition(int i) {
+            int j = i - 1;
+            while (j >= 0 && children[j] instanceof Group) {
+                j--;
+            }
+            if (j < 0 || !(children[j] instanceof Choice)) {
+                return null;
+            }
+            Choice count = (Choice) children[j];
+            if (count.value <= count.min) {
+                return null;
+            }
+            Group group = without(i);
+            group.children[j] = count.with(count.value - 1);
+            return group;
+        }
+
+        private Group with(int i, Decision child) {
+            Decision[] copy = children.clone();
+            copy[i] = child;
+            return new Group(copy);
+        }
+
+        private Group without(int i) {
+            Decision[] copy = new Decision[children.length - 1];
+            System.arraycopy(children, 0, copy, 0, i);
+            System.arraycopy(children, i + 1, copy, i, copy.length - i);
+            return new Group(copy);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(children);
+        }
+    }
+
+    private static long add(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+}
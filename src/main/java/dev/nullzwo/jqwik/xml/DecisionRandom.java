@@ -0,0 +1,201 @@
+package dev.nullzwo.jqwik.xml;
+
+import jlibs.core.util.RandomUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link RandomUtil} that records the values it returns as a {@link Decision.Group} tree.
+ * <p>
+ * When created with a tree, the values are replayed from it instead. A replayed value is
+ * clamped into the requested range; where the tree has no matching value, for example
+ * because a repetition was added, the simplest value is used. Replaying records the values
+ * actually used, so that {@link #decisions()} is a tree without unused leftovers.
+ * <p>
+ * For edge cases, the values are the minimum or maximum of their ranges instead, chosen
+ * separately for the structure of the document and within values, see {@link #startValue()}.
+ */
+class DecisionRandom extends RandomUtil {
+
+    private final boolean replay;
+    private Frame frame;
+
+    /** for edge cases, whether the decisions of the structure are maximal, and those within values; null otherwise */
+    private final Boolean maximal;
+    private final boolean maximalValues;
+    private int valueDepth;
+
+    /**
+     * Creates a recording instance drawing its values from the given random.
+     */
+    DecisionRandom(Random random) {
+        super(random);
+        replay = false;
+        maximal = null;
+        maximalValues = false;
+        frame = new Frame(null, Decision.Group.EMPTY);
+    }
+
+    /**
+     * Creates a recording instance for an edge case, using the minimum or maximum of every range.
+     */
+    DecisionRandom(boolean maximal, boolean maximalValues) {
+        super(null);
+        replay = false;
+        this.maximal = maximal;
+        this.maximalValues = maximalValues;
+        frame = new Frame(null, Decision.Group.EMPTY);
+    }
+
+    /**
+     * Creates an instance replaying the given decisions.
+     */
+    DecisionRandom(Decision.Group decisions) {
+        super(null);
+        replay = true;
+        maximal = null;
+        maximalValues = false;
+        frame = new Frame(null, decisions);
+    }
+
+    Decision.Group decisions() {
+        if (frame.parent != null) {
+            throw new IllegalStateException("unbalanced groups");
+        }
+        return frame.toGroup();
+    }
+
+    private Decision next() {
+        Frame f = frame;
+        Decision[] source = f.source.children;
+        return f.index < source.length ? source[f.index++] : null;
+    }
+
+    private boolean extreme() {
+        return valueDepth > 0 ? maximalValues : maximal;
+    }
+
+    private long choose(long min, long max, LongSupplier random) {
+        long target = Decision.target(min, max);
+        Decision next = next();
+        long value;
+        if (next instanceof Decision.Choice) {
+            value = ((Decision.Choice) next).clamp(min, max);
+        } else if (maximal != null) {
+            value = extreme() ? max : min;
+        } else {
+            value = replay ? target : random.getAsLong();
+        }
+        frame.recorded.add(new Decision.Choice(value, min, max, target));
+        return value;
+    }
+
+    private double choose(double min, double max, DoubleSupplier random) {
+        double target = Decision.target(min, max);
+        Decision next = next();
+        double value;
+        if (next instanceof Decision.Real) {
+            value = ((Decision.Real) next).clamp(min, max);
+        } else if (maximal != null) {
+            value = extreme() ? max : min;
+        } else {
+            value = replay ? target : random.getAsDouble();
+        }
+        frame.recorded.add(new Decision.Real(value, min, max, target));
+        return value;
+    }
+
+    @Override
+    public double random(double min, double max) {
+        return choose(min, max, () -> super.random(min, max));
+    }
+
+    @Override
+    public float random(float min, float max) {
+        return (float) choose(min, max, () -> super.random(min, max));
+    }
+
+    @Override
+    public long random(long min, long max) {
+        return choose(min, max, () -> super.random(min, max));
+    }
+
+    @Override
+    public int random(int min, int max) {
+        return (int) choose(min, max, () -> super.random(min, max));
+    }
+
+    @Override
+    public short random(short min, short max) {
+        return (short) choose(min, max, () -> super.random(min, max));
+    }
+
+    @Override
+    public byte random(byte min, byte max) {
+        return (byte) choose(min, max, () -> super.random(min, max));
+    }
+
+    @Override
+    public int randomIndex(int bound) {
+        return (int) choose(0, bound - 1, () -> super.randomIndex(bound));
+    }
+
+    /**
+     * {@code false} is the simpler value, so that optional content shrinks to being omitted.
+     */
+    @Override
+    public boolean randomBoolean() {
+        return choose(0, 1, () -> super.randomBoolean() ? 1 : 0) == 1;
+    }
+
+    @Override
+    public void startGroup() {
+        Decision next = next();
+        frame = new Frame(frame, next instanceof Decision.Group ? (Decision.Group) next : Decision.Group.EMPTY);
+    }
+
+    @Override
+    public void endGroup() {
+        Frame f = frame;
+        frame = f.parent;
+        frame.recorded.add(f.toGroup());
+    }
+
+    /**
+     * Only the edge cases with maximal values fill strings.
+     */
+    @Override
+    public boolean fillsToMaxLength() {
+        return maximal != null && maximalValues;
+    }
+
+    @Override
+    public void startValue() {
+        valueDepth++;
+    }
+
+    @Override
+    public void endValue() {
+        valueDepth--;
+    }
+
+    private static final class Frame {
+        final Frame parent;
+        final Decision.Group source;
+        int index;
+        final List<Decision> recorded = new ArrayList<>();
+
+        Frame(Frame parent, Decision.Group source) {
+            this.parent = parent;
+            this.source = source;
+        }
+
+        Decision.Group toGroup() {
+            return new Decision.Group(recorded.toArray(new Decision[0]));
+        }
+    }
+}
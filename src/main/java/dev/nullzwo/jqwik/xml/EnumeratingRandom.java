@@ -0,0 +1,153 @@
+package dev.nullzwo.jqwik.xml;
+
+import jlibs.core.util.RandomUtil;
+
+import java.util.Arrays;
+
+/**
+ * A {@link RandomUtil} that enumerates the decisions of the documents of a schema, like an odometer.
+ * <p>
+ * The first document takes the minimum of every range. Each following one replays the decisions of
+ * the previous document up to its last decision not at its maximum, takes the next value there, and
+ * the minimum of every range after it. As decisions only depend on the ones before them, this visits
+ * every path of the decision tree once, keeping only the path of the current document.
+ * <p>
+ * Values marked with {@link #startValue()}, like numbers or strings matching a pattern, have too many
+ * alternatives to be enumerated; their simplest value is used, as when shrinking, and
+ * {@link #pinnedValues()} tells that the documents don't cover them.
+ */
+class EnumeratingRandom extends RandomUtil {
+
+    /** decisions of the current document, and the maximum of their ranges */
+    private long[] values = new long[16];
+    private long[] maxima = new long[16];
+
+    /** number of decisions to replay */
+    private int replayed;
+    private int position;
+    private int valueDepth;
+    private boolean pinned;
+
+    EnumeratingRandom() {
+        super(null);
+    }
+
+    /**
+     * Prepares the decisions of the document following the one just generated, returning
+     * false if that was the last one.
+     */
+    boolean next() {
+        int i = position - 1;
+        while (i >= 0 && values[i] == maxima[i]) {
+            i--;
+        }
+        position = 0;
+        replayed = i + 1;
+        if (i < 0) {
+            return false;
+        }
+        values[i]++;
+        return true;
+    }
+
+    /**
+     * Returns a lower bound of the number of documents following the one just generated:
+     * every untried value of its decisions leads to at least one.
+     */
+    long remaining() {
+        long remaining = 0;
+        for (int i = 0; i < position; i++) {
+            remaining += maxima[i] - values[i];
+            if (remaining < 0) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Whether a value with alternatives was fixed to its simplest one in the documents generated so far.
+     */
+    boolean pinnedValues() {
+        return pinned;
+    }
+
+    private long choose(long min, long max) {
+        if (valueDepth > 0) {
+            pinned |= min < max;
+            return Decision.target(min, max);
+        }
+        if (min >= max) {
+            return min;
+        }
+        long value;
+        if (position < replayed) {
+            value = Math.max(min, Math.min(values[position], max));
+        } else {
+            if (position == values.length) {
+                values = Arrays.copyOf(values, position * 2);
+                maxima = Arrays.copyOf(maxima, position * 2);
+            }
+            value = min;
+        }
+        values[position] = value;
+        maxima[position] = max;
+        position++;
+        return value;
+    }
+
+    /**
+     * Real values are never enumerated.
+     */
+    @Override
+    public double random(double min, double max) {
+        pinned |= min < max;
+        return Decision.target(min, max);
+    }
+
+    @Override
+    public float random(float min, float max) {
+        pinned |= min < max;
+        return (float) Decision.target(min, max);
+    }
+
+    @Override
+    public long random(long min, long max) {
+        return choose(min, max);
+    }
+
+    @Override
+    public int random(int min, int max) {
+        return (int) choose(min, max);
+    }
+
+    @Override
+    public short random(short min, short max) {
+        return (short) choose(min, max);
+    }
+
+    @Override
+    public byte random(byte min, byte max) {
+        return (byte) choose(min, max);
+    }
+
+    @Override
+    public int randomIndex(int bound) {
+        return (int) choose(0, bound - 1);
+    }
+
+    @Override
+    public boolean randomBoolean() {
+        return choose(0, 1) == 1;
+    }
+
+    @Override
+    public void startValue() {
+        valueDepth++;
+    }
+
+    @Override
+    public void endValue() {
+        valueDepth--;
+    }
+}
@@ -0,0 +1,273 @@
+package dev.nullzwo.jqwik.xml;
+
+import jlibs.xml.xsd.XSParser;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of loaded schemas, keyed by the canonical uri of the schema file.
+ * <p>
+ * Concurrent requests for the same schema load it only once. Local files are reloaded when their
+ * modification time or size changed since they were loaded; files included or imported by the
+ * schema are not checked, use {@link #invalidate(String)} for those. When more than
+ * {@code maximumSize} schemas are cached, the least recently used ones are evicted.
+ */
+public final class SchemaCache {
+
+    private static final SchemaCache DEFAULT = new SchemaCache(64);
+
+    /**
+     * The cache used by {@link XmlArbitraries}.
+     */
+    public static SchemaCache getDefault() {
+        return DEFAULT;
+    }
+
+    private final int maximumSize;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong totalLoadTime = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public SchemaCache(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Returns the schema loaded from the given file path or uri, loading it if it is not cached or has changed.
+     */
+    public XmlSchema get(String xsdFile) {
+        String uri = canonicalUri(xsdFile);
+        Stamp stamp = Stamp.of(uri);
+        while (true) {
+            Entry entry = entries.get(uri);
+            if (entry != null && !entry.stamp.equals(stamp)) {
+                entries.remove(uri, entry);
+                entry = null;
+            }
+            if (entry == null) {
+                Entry created = new Entry(stamp, clock.incrementAndGet());
+                entry = entries.putIfAbsent(uri, created);
+                if (entry == null) {
+                    misses.incrementAndGet();
+                    load(uri, created);
+                    evict();
+                    entry = created;
+                } else {
+                    hits.incrementAndGet();
+                    entry.lastAccess = clock.incrementAndGet();
+                }
+            } else {
+                hits.incrementAndGet();
+                entry.lastAccess = clock.incrementAndGet();
+            }
+            try {
+                return entry.schema.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while loading " + uri, e);
+            } catch (ExecutionException e) {
+                if (entry.owner == Thread.currentThread()) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw (RuntimeException) cause;
+                }
+                // another thread failed to load it, try again ourself
+            }
+        }
+    }
+
+    private void load(String uri, Entry entry) {
+        entry.owner = Thread.currentThread();
+        long start = System.nanoTime();
+        try {
+            entry.schema.complete(new XmlSchema(uri, new XSParser().parse(uri)));
+        } catch (Throwable e) { // waiting threads must not block forever, whatever failed
+            loadFailures.incrementAndGet();
+            entries.remove(uri, entry);
+            entry.schema.completeExceptionally(e);
+        } finally {
+            totalLoadTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Removes the least recently used schemas beyond {@code maximumSize}. Schemas still loading are
+     * kept, as other threads may be waiting for them.
+     */
+    private void evict() {
+        while (entries.size() > maximumSize) {
+            Map.Entry<String, Entry> eldest = null;
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                if (e.getValue().schema.isDone()
+                        && (eldest == null || e.getValue().lastAccess < eldest.getValue().lastAccess)) {
+                    eldest = e;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            if (entries.remove(eldest.getKey(), eldest.getValue())) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes the given schema, so that it is loaded again by the next {@link #get(String)}.
+     */
+    public void invalidate(String xsdFile) {
+        entries.remove(canonicalUri(xsdFile));
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Stats stats() {
+        return new Stats(hits.get(), misses.get(), loadFailures.get(), totalLoadTime.get(), evictions.get());
+    }
+
+    static String canonicalUri(String xsdFile) {
+        int colon = xsdFile.indexOf(':');
+        if (colon > 1) { // not a windows drive letter
+            URI uri = URI.create(xsdFile).normalize();
+            if (!"file".equals(uri.getScheme())) {
+                return uri.toString();
+            }
+            return canonicalPath(Paths.get(uri)).toUri().toString();
+        }
+        return canonicalPath(Paths.get(xsdFile)).toUri().toString();
+    }
+
+    private static Path canonicalPath(Path path) {
+        try {
+            return path.toRealPath();
+        } catch (IOException e) { // let the parser report it
+            return path.toAbsolutePath().normalize();
+        }
+    }
+
+    private static final class Entry {
+        final Stamp stamp;
+        final CompletableFuture<XmlSchema> schema = new CompletableFuture<>();
+        volatile Thread owner;
+        volatile long lastAccess;
+
+        Entry(Stamp stamp, long lastAccess) {
+            this.stamp = stamp;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * Modification time and size of a local schema file, {@link #NONE} for other uris.
+     */
+    private static final class Stamp {
+        static final Stamp NONE = new Stamp(0, 0);
+
+        final long lastModified;
+        final long size;
+
+        Stamp(long lastModified, long size) {
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        static Stamp of(String uri) {
+            if (!uri.startsWith("file:")) {
+                return NONE;
+            }
+            try {
+                Path path = Paths.get(URI.create(uri));
+                return new Stamp(Files.getLastModifiedTime(path).toMillis(), Files.size(path));
+            } catch (IOException e) {
+                return NONE;
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Stamp)) {
+                return false;
+            }
+            Stamp that = (Stamp) obj;
+            return lastModified == that.lastModified && size == that.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(lastModified) * 31 + Long.hashCode(size);
+        }
+    }
+
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long loadFailures;
+        private final long totalLoadTime;
+        private final long evictions;
+
+        Stats(long hits, long misses, long loadFailures, long totalLoadTime, long evictions) {
+            this.hits = hits;
+            this.misses = misses;
+            this.loadFailures = loadFailures;
+            this.totalLoadTime = totalLoadTime;
+            this.evictions = evictions;
+        }
+
+        public long hitCount() {
+            return hits;
+        }
+
+        /**
+         * Number of loads, including failed ones.
+         */
+        public long missCount() {
+            return misses;
+        }
+
+        public long loadFailureCount() {
+            return loadFailures;
+        }
+
+        /**
+         * Time spent loading schemas, in nanoseconds.
+         */
+        public long totalLoadTime() {
+            return totalLoadTime;
+        }
+
+        public long evictionCount() {
+            return evictions;
+        }
+
+        @Override
+        public String toString() {
+            return "SchemaCache.Stats{hits=" + hits + ", misses=" + misses + ", loadFailures=" + loadFailures
+                    + ", totalLoadTime=" + totalLoadTime / 1_000_000 + "ms, evictions=" + evictions + '}';
+        }
+    }
+}
@@ -1,21 +1,15 @@
 package dev.nullzwo.jqwik.xml;
 
-import jlibs.core.util.RandomUtil;
-import jlibs.xml.sax.XMLDocument;
 import jlibs.xml.xsd.XSConfig;
-import jlibs.xml.xsd.XSInstance;
-import jlibs.xml.xsd.XSParser;
+import jlibs.xml.xsd.XSValueProvider;
 import net.jqwik.api.Arbitraries;
 import net.jqwik.api.Arbitrary;
-import org.apache.xerces.xs.XSModel;
+import net.jqwik.api.RandomGenerator;
 
 import javax.xml.namespace.QName;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.stream.StreamResult;
-import java.io.ByteArrayOutputStream;
-import java.util.Map;
+import java.io.InputStream;
 import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 public class XmlArbitraries {
 
@@ -25,11 +19,57 @@ public class XmlArbitraries {
         BOTH;
     }
 
+    /**
+     * genSize of the generators of the arbitraries used as value providers, jqwik's default
+     */
+    private static final int GEN_SIZE = 1000;
+
     private final XSConfig config = new XSConfig();
 
-    private static final Map<String, XSModel> models = new ConcurrentHashMap<>();
+    /**
+     * Returns a new config for documents only read by programs: without content model comments and indentation,
+     * which are the fastest to generate.
+     */
+    public static XSConfig machineMode() {
+        var config = new XSConfig();
+        config.showContentModel = false;
+        config.prettyPrint = false;
+        return config;
+    }
 
     public static Arbitrary<byte[]> fromXsdFile(String xsdFile, String rootName, OptionalAttributes config) {
+        return new XmlArbitrary(generator(xsdFile, rootName, config), false);
+    }
+
+    /**
+     * Like {@link #fromXsdFile(String, String, OptionalAttributes)}, with all generation settings, for example
+     * the budgets bounding the size of the documents. The config must not be modified afterwards.
+     */
+    public static Arbitrary<byte[]> fromXsdFile(String xsdFile, String rootName, XSConfig config) {
+        return new XmlArbitrary(generator(xsdFile, rootName, config), false);
+    }
+
+    /**
+     * Like {@link #fromXsdFile(String, String, XSConfig)}, but generated exhaustively even if the documents have
+     * values which are not enumerated, like numbers, dates or strings matching a pattern. These take their
+     * simplest value only, so use it with {@code GenerationMode.EXHAUSTIVE} to cover the structure of small
+     * schemas.
+     */
+    public static Arbitrary<byte[]> exhaustiveFromXsdFile(String xsdFile, String rootName, XSConfig config) {
+        return new XmlArbitrary(generator(xsdFile, rootName, config), true);
+    }
+
+    /**
+     * Like {@link #fromXsdFile(String, String, OptionalAttributes)}, but for documents too large to be held
+     * in memory: every supplied stream generates the document again while it is read.
+     */
+    public static Arbitrary<Supplier<InputStream>> streamsFromXsdFile(String xsdFile, String rootName,
+                                                                      OptionalAttributes config) {
+        var generator = generator(xsdFile, rootName, config);
+        return Arbitraries.randomValue(Random::nextLong).map(generator::supplier);
+    }
+
+    public static XmlGenerator generator(String xsdFile, String rootName, OptionalAttributes config) {
         final Boolean value;
         switch (config) {
             case BOTH:
@@ -45,38 +85,31 @@ public class XmlArbitraries {
                 throw new UnsupportedOperationException();
         }
 
-        return fromXsdFile(xsdFile, rootName, value);
+        var xsConfig = new XSConfig();
+        xsConfig.generateOptionalAttributesAsEmptyString = value;
+        return generator(xsdFile, rootName, xsConfig);
     }
 
-    private static Arbitrary<byte[]> fromXsdFile(String xsdFile, String rootName, Boolean optionalAsEmptyString) {
-        var config = new XSConfig();
-        config.generateOptionalAttributesAsEmptyString = optionalAsEmptyString;
-        return Arbitraries.randomValue(r -> generate(r, xsdFile, rootName, config));
+    /**
+     * Adapts the arbitrary to be bound in {@link XSConfig#valueProviders}, for example to generate realistic
+     * domain values. Each value is generated from a seed drawn from the random of the document, so that it is
+     * reproduced with the document, and shrinks along with it.
+     */
+    public static XSValueProvider valueProvider(Arbitrary<String> arbitrary) {
+        RandomGenerator<String> generator = arbitrary.generator(GEN_SIZE);
+        return random -> generator.next(new Random(random.random(Long.MIN_VALUE, Long.MAX_VALUE))).value();
     }
 
-    private static byte[] generate(Random rnd, String xsdFile, String rootName, XSConfig config) {
-        var xsModel = loadModel(xsdFile);
-
-        QName rootElement = new QName("", rootName);
-
-        try {
-            var out = new ByteArrayOutputStream();
-            var sampleXml = new XMLDocument(new StreamResult(out), true, 4, null);
-            var xsInstance = new XSInstance(new RandomUtil(rnd), config);
-            xsInstance.generate(xsModel, rootElement, sampleXml);
-
-            return out.toByteArray();
-        } catch (TransformerConfigurationException e) {
-            throw new RuntimeException(e);
-        }
+    public static XmlGenerator generator(String xsdFile, String rootName, XSConfig config) {
+        return new XmlGenerator(SchemaCache.getDefault().get(xsdFile), new QName("", rootName), config);
     }
 
-    private static XSModel loadModel(String xsdFile) {
-        var m = models.get(xsdFile);
-        if (m == null) {
-            m = new XSParser().parse(xsdFile);
-            models.put(xsdFile, m);
-        }
-        return m;
+    /**
+     * Generates the document of the given seed, which is the same for the same schema, root element, config
+     * and seed, on any thread and machine. The compiled generator is reused while the same config instance is
+     * passed, see {@link XmlSchema#generator(QName, XSConfig)}.
+     */
+    public static byte[] generate(XmlSchema schema, String rootName, XSConfig config, long seed) {
+        return schema.generator(new QName("", rootName), config).generate(seed);
     }
 }
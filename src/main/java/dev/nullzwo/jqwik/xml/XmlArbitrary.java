@@ -0,0 +1,156 @@
+package dev.nullzwo.jqwik.xml;
+
+import net.jqwik.api.Arbitrary;
+import net.jqwik.api.EdgeCases;
+import net.jqwik.api.ExhaustiveGenerator;
+import net.jqwik.api.RandomGenerator;
+import net.jqwik.api.Shrinkable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Generates xml documents of a compiled schema, recording the random decisions of each
+ * document so that it can be shrunk by replaying simplified decisions.
+ * <p>
+ * Documents can also be generated exhaustively, when the schema has few enough of them: all
+ * combinations of repetitions, optional content, choices and enumerations are enumerated, see
+ * {@link EnumeratingRandom}. Other values, like numbers, dates or strings matching a pattern, would
+ * only take their simplest value, so documents having them are not generated exhaustively unless
+ * {@code pinValues} is set.
+ * <p>
+ * The edge cases are the documents taking the minimum or maximum of every decision: the minimal
+ * document, without optional content and with the lower bounds of values and first enumerations,
+ * the maximal one, with every repetition up to the limits of the config and the upper bounds,
+ * and the two documents mixing them.
+ */
+final class XmlArbitrary implements Arbitrary<byte[]> {
+
+    private final XmlGenerator generator;
+
+    /** whether documents are enumerated although some of their values are fixed to the simplest one */
+    private final boolean pinValues;
+
+    /** number of documents if all were counted, otherwise a number they are known to exceed */
+    private volatile long count = -1;
+    private volatile boolean counted;
+    private volatile boolean pinned;
+
+    /** distinct edge cases, computed when first asked for */
+    private volatile List<XmlShrinkable> edgeCases;
+
+    XmlArbitrary(XmlGenerator generator, boolean pinValues) {
+        this.generator = generator;
+        this.pinValues = pinValues;
+    }
+
+    @Override
+    public RandomGenerator<byte[]> generator(int genSize) {
+        return random -> {
+            var decisions = new DecisionRandom(random);
+            var xml = generator.generate(decisions);
+            return new XmlShrinkable(this, decisions.decisions(), xml);
+        };
+    }
+
+    @Override
+    public Optional<ExhaustiveGenerator<byte[]>> exhaustive(long maxNumberOfSamples) {
+        long maxCount = count(maxNumberOfSamples);
+        if (maxCount > maxNumberOfSamples || pinned && !pinValues) {
+            return Optional.empty();
+        }
+        return Optional.of(new ExhaustiveGenerator<byte[]>() {
+            @Override
+            public long maxCount() {
+                return maxCount;
+            }
+
+            @Override
+            public Iterator<byte[]> iterator() {
+                return new Iterator<byte[]>() {
+                    private final EnumeratingRandom random = new EnumeratingRandom();
+                    private boolean hasNext = true;
+
+                    @Override
+                    public boolean hasNext() {
+                        return hasNext;
+                    }
+
+                    @Override
+                    public byte[] next() {
+                        if (!hasNext) {
+                            throw new NoSuchElementException();
+                        }
+                        var xml = generator.generate(random);
+                        hasNext = random.next();
+                        return xml;
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * Counts the documents, up to one more than the given maximum, stopping early once
+     * the decisions not yet tried show that there are more.
+     */
+    private long count(long max) {
+        if (counted || count > max) {
+            return count;
+        }
+        var random = new EnumeratingRandom();
+        long n = 0;
+        boolean more;
+        do {
+            generator.generate(random);
+            n++;
+            if (n + random.remaining() > max) {
+                count = max + 1;
+                return count;
+            }
+            more = random.next();
+        } while (more);
+        pinned = random.pinnedValues();
+        count = n;
+        counted = true;
+        return n;
+    }
+
+    @Override
+    public EdgeCases<byte[]> edgeCases(int maxEdgeCases) {
+        List<XmlShrinkable> edgeCases = this.edgeCases;
+        if (edgeCases == null) {
+            this.edgeCases = edgeCases = computeEdgeCases();
+        }
+        List<Supplier<Shrinkable<byte[]>>> suppliers = new ArrayList<>();
+        for (int i = 0; i < Math.min(maxEdgeCases, edgeCases.size()); i++) {
+            Shrinkable<byte[]> edgeCase = edgeCases.get(i);
+            suppliers.add(() -> edgeCase);
+        }
+        return EdgeCases.fromSuppliers(suppliers);
+    }
+
+    private List<XmlShrinkable> computeEdgeCases() {
+        List<XmlShrinkable> edgeCases = new ArrayList<>();
+        boolean[][] extremes = {{false, false}, {true, true}, {true, false}, {false, true}};
+        for (boolean[] extreme : extremes) {
+            var random = new DecisionRandom(extreme[0], extreme[1]);
+            var xml = generator.generate(random);
+            if (edgeCases.stream().noneMatch(edgeCase -> Arrays.equals(edgeCase.value(), xml))) {
+                edgeCases.add(new XmlShrinkable(this, random.decisions(), xml));
+            }
+        }
+        return edgeCases;
+    }
+
+    XmlShrinkable replay(Decision.Group decisions) {
+        var random = new DecisionRandom(decisions);
+        var xml = generator.generate(random);
+        return new XmlShrinkable(this, random.decisions(), xml);
+    }
+}
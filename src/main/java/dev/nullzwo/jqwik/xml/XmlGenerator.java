@@ -0,0 +1,309 @@
+package dev.nullzwo.jqwik.xml;
+
+import jlibs.core.lang.ImpossibleException;
+import jlibs.core.util.RandomUtil;
+import jlibs.xml.sax.SAXDelegate;
+import jlibs.xml.sax.XMLDocument;
+import jlibs.xml.sax.XMLWriter;
+import jlibs.xml.xsd.XSConfig;
+import jlibs.xml.xsd.XSInstance;
+import jlibs.xml.xsd.XSPlan;
+import org.xml.sax.SAXException;
+
+import javax.xml.namespace.QName;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Generates xml documents of a schema from seeds; the same seed always generates the same document,
+ * whichever thread generates it and whatever was generated before, so that a corpus can be described,
+ * and sharded, as ranges of seeds.
+ * <p>
+ * Documents written to a stream, channel or file are never held in memory as a whole, so
+ * they can be larger than the heap. Batches of documents are generated in parallel.
+ */
+public final class XmlGenerator {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /** the increment of {@link SplittableRandom}'s default stream */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private static final int INDENT_AMOUNT = 4;
+
+    /** buffers larger than this are not kept for the next document of the thread */
+    private static final int MAX_RETAINED_SIZE = 1 << 20;
+
+    /** producers of {@link #open(long)}, each blocking until its stream is read or closed */
+    private static final int MAX_PRODUCERS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final Executor PRODUCERS = producers();
+
+    private static final ThreadLocal<XMLWriter> indentedWriters = ThreadLocal.withInitial(() -> new XMLWriter(true, INDENT_AMOUNT));
+    private static final ThreadLocal<XMLWriter> compactWriters = ThreadLocal.withInitial(() -> new XMLWriter(true, -1));
+
+    private final XSPlan plan;
+
+    public XmlGenerator(XmlSchema schema, QName rootElement, XSConfig config) {
+        this(XSPlan.compile(schema.getModel(), schema.getIndex(), rootElement, config));
+    }
+
+    XmlGenerator(XSPlan plan) {
+        this.plan = plan;
+    }
+
+    public byte[] generate(long seed) {
+        return generate(random(seed));
+    }
+
+    /**
+     * Like {@link #generate(long)}, but returns a read-only view of the buffer of the current thread, which
+     * saves copying the document. The buffer is overwritten by the next document generated on this thread.
+     */
+    public ByteBuffer generateBuffer(long seed) {
+        var writer = writer();
+        try {
+            generate(random(seed), writer);
+            return writer.toByteBuffer();
+        } finally {
+            release(writer);
+        }
+    }
+
+    /**
+     * Generates {@code count} documents in parallel on the common fork-join pool, and returns them in
+     * the order of their seeds.
+     *
+     * @see #batch(long, int)
+     */
+    public List<byte[]> generate(long masterSeed, int count) {
+        return batch(masterSeed, count).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns a parallel stream of {@code count} documents, the i-th being generated from
+     * {@link #seed(long, int) seed(masterSeed, i)}. The stream is ordered, so {@code forEachOrdered}
+     * and {@code collect} see the documents in that order, while {@code forEach} consumes them as
+     * soon as they are generated. To use another pool than the common fork-join pool, run the
+     * terminal operation in a task of that pool.
+     */
+    public Stream<byte[]> batch(long masterSeed, int count) {
+        return IntStream.range(0, count).parallel().mapToObj(i -> generate(seed(masterSeed, i)));
+    }
+
+    /**
+     * Returns the seed of the i-th document of a batch, which is the i-th {@code nextLong()}
+     * of {@code new SplittableRandom(masterSeed)}, computed without the preceding ones.
+     */
+    public static long seed(long masterSeed, int index) {
+        return new SplittableRandom(masterSeed + index * GOLDEN_GAMMA).nextLong();
+    }
+
+    /**
+     * Writes the document to {@code out}, which is flushed but not closed.
+     */
+    public void generate(long seed, OutputStream out) throws IOException {
+        try {
+            generate(random(seed), new XMLWriter(out, true, indentAmount(), BUFFER_SIZE));
+        } catch (ImpossibleException ex) {
+            if (ex.getCause() instanceof SAXException
+                    && ((SAXException) ex.getCause()).getException() instanceof IOException) {
+                throw (IOException) ((SAXException) ex.getCause()).getException();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Writes the document to {@code channel}, which is not closed.
+     */
+    public void generate(long seed, WritableByteChannel channel) throws IOException {
+        generate(seed, Channels.newOutputStream(channel));
+    }
+
+    public void generate(long seed, Path file) throws IOException {
+        try (var out = Files.newOutputStream(file)) {
+            generate(seed, out);
+        }
+    }
+
+    /**
+     * Returns a supplier of the document, generating it again for every stream it supplies.
+     *
+     * @see #open(long)
+     */
+    public Supplier<InputStream> supplier(long seed) {
+        return new Supplier<>() {
+            @Override
+            public InputStream get() {
+                return open(seed);
+            }
+
+            @Override
+            public String toString() {
+                return "xml document of seed " + seed;
+            }
+        };
+    }
+
+    /**
+     * Returns a stream of the document, which is generated by a shared pool of background threads while
+     * it is read. The pool is bounded: once all of its threads generate documents, further streams wait
+     * for one of them to be read to the end or closed.
+     *
+     * @see #open(long, Executor)
+     */
+    public InputStream open(long seed) {
+        return open(seed, PRODUCERS);
+    }
+
+    /**
+     * Returns a stream of the document, which is generated by a task of the given executor while it is
+     * read. Errors of the generator are thrown by the stream when it reaches the end of the document.
+     * <p>
+     * The task blocks while the stream is not read, so the caller must read the stream to its end or
+     * close it; closing it early stops the generator.
+     */
+    public InputStream open(long seed, Executor executor) {
+        var in = new PipedInputStream(BUFFER_SIZE * 4);
+        PipedOutputStream out;
+        try {
+            out = new PipedOutputStream(in);
+        } catch (IOException ex) {
+            throw new ImpossibleException(ex);
+        }
+        var producer = new Producer(seed, out);
+        executor.execute(producer);
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                return producer.check(super.read());
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return producer.check(super.read(b, off, len));
+            }
+        };
+    }
+
+    /**
+     * Generates into the writer of the current thread and returns a copy of the document.
+     */
+    byte[] generate(RandomUtil random) {
+        var writer = writer();
+        try {
+            generate(random, writer);
+            return writer.toByteArray();
+        } finally {
+            release(writer);
+        }
+    }
+
+    private ThreadLocal<XMLWriter> writers() {
+        return plan.getConfig().prettyPrint ? indentedWriters : compactWriters;
+    }
+
+    private XMLWriter writer() {
+        return writers().get();
+    }
+
+    /**
+     * Drops the writer of the current thread if its buffer grew for a large document, which
+     * would otherwise stay allocated as long as the thread lives. Also called when the
+     * generation failed, as the buffer may have grown before.
+     */
+    private void release(XMLWriter writer) {
+        if (writer.capacity() > MAX_RETAINED_SIZE) {
+            writers().remove();
+        }
+    }
+
+    private int indentAmount() {
+        return plan.getConfig().prettyPrint ? INDENT_AMOUNT : -1;
+    }
+
+    private void generate(RandomUtil random, XMLWriter writer) {
+        var sampleXml = new XMLDocument(new SAXDelegate(writer));
+        new XSInstance(random, plan.getConfig()).generate(plan, sampleXml);
+    }
+
+    /**
+     * {@link Random} only xors the seed with a constant, so that the first values of close seeds are
+     * correlated; the seed is mixed like {@link SplittableRandom} does to make them independent.
+     */
+    private static RandomUtil random(long seed) {
+        return new RandomUtil(new Random(mix(seed)));
+    }
+
+    private static Executor producers() {
+        var count = new AtomicInteger();
+        var pool = new ThreadPoolExecutor(MAX_PRODUCERS, MAX_PRODUCERS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    var thread = new Thread(runnable, "xml-generator-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private final class Producer implements Runnable {
+        private final long seed;
+        private final PipedOutputStream out;
+        private volatile Throwable failure;
+
+        Producer(long seed, PipedOutputStream out) {
+            this.seed = seed;
+            this.out = out;
+        }
+
+        @Override
+        public void run() {
+            try {
+                generate(seed, out);
+            } catch (Throwable ex) {
+                failure = ex;
+            } finally {
+                try {
+                    out.close();
+                } catch (IOException ignore) {
+                    // reader is gone
+                }
+            }
+        }
+
+        int check(int read) throws IOException {
+            if (read == -1 && failure != null) {
+                throw new IOException("generation of " + seed + " failed", failure);
+            }
+            return read;
+        }
+    }
+}
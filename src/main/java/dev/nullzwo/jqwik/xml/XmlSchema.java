@@ -0,0 +1,103 @@
+package dev.nullzwo.jqwik.xml;
+
+import jlibs.xml.xsd.XSConfig;
+import jlibs.xml.xsd.XSIndex;
+import org.apache.xerces.xs.XSModel;
+
+import javax.xml.namespace.QName;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A loaded XSD, as handed out by {@link SchemaCache}.
+ */
+public final class XmlSchema {
+
+    /** number of generators kept by {@link #generator(QName, XSConfig)} */
+    private static final int GENERATORS = 16;
+
+    private final String uri;
+    private final XSModel model;
+    private final XSIndex index;
+
+    /** least recently used generators, keyed by root element and config identity */
+    private final Map<GeneratorKey, XmlGenerator> generators = new LinkedHashMap<>(GENERATORS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<GeneratorKey, XmlGenerator> eldest) {
+            return size() > GENERATORS;
+        }
+    };
+
+    XmlSchema(String uri, XSModel model) {
+        this.uri = uri;
+        this.model = model;
+        index = new XSIndex(model);
+    }
+
+    /**
+     * The canonical uri the schema was loaded from.
+     */
+    public String getUri() {
+        return uri;
+    }
+
+    public XSModel getModel() {
+        return model;
+    }
+
+    /**
+     * Subtypes and substitution groups of the model, shared by all generators of this schema.
+     */
+    public XSIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the generator of documents of the given root element, compiling it only if it is not one of the
+     * recently used ones. Generators are reused for the same config instance, which must not be modified after
+     * it was first used.
+     */
+    public XmlGenerator generator(QName rootElement, XSConfig config) {
+        var key = new GeneratorKey(rootElement, config);
+        synchronized (generators) {
+            var generator = generators.get(key);
+            if (generator != null) {
+                return generator;
+            }
+        }
+        var generator = new XmlGenerator(this, rootElement, config);
+        synchronized (generators) {
+            var existing = generators.putIfAbsent(key, generator);
+            return existing != null ? existing : generator;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return uri;
+    }
+
+    private static final class GeneratorKey {
+        final QName rootElement;
+        final XSConfig config;
+
+        GeneratorKey(QName rootElement, XSConfig config) {
+            this.rootElement = rootElement;
+            this.config = config;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof GeneratorKey)) {
+                return false;
+            }
+            GeneratorKey that = (GeneratorKey) obj;
+            return rootElement.equals(that.rootElement) && config == that.config;
+        }
+
+        @Override
+        public int hashCode() {
+            return rootElement.hashCode() * 31 + System.identityHashCode(config);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package dev.nullzwo.jqwik.xml;
+
+import net.jqwik.api.Shrinkable;
+import net.jqwik.api.ShrinkingDistance;
+
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+/**
+ * A generated document together with the decisions it was generated from.
+ * <p>
+ * Shrinking replays simplified decisions: fewer repetitions, omitted optional content, first
+ * choice branches and values closer to zero. Replaying always runs the generator, so every
+ * shrunk document is as valid as a generated one.
+ */
+final class XmlShrinkable implements Shrinkable<byte[]> {
+
+    private final XmlArbitrary arbitrary;
+    private final Decision.Group decisions;
+    private final byte[] xml;
+    private final ShrinkingDistance distance;
+
+    XmlShrinkable(XmlArbitrary arbitrary, Decision.Group decisions, byte[] xml) {
+        this.arbitrary = arbitrary;
+        this.decisions = decisions;
+        this.xml = xml;
+        long[] measure = new long[2];
+        decisions.measure(measure);
+        distance = ShrinkingDistance.of(measure[0], measure[1]);
+    }
+
+    @Override
+    public byte[] value() {
+        return xml.clone();
+    }
+
+    @Override
+    public Stream<Shrinkable<byte[]>> shrink() {
+        return decisions.shrink()
+                .map(arbitrary::replay)
+                .filter(candidate -> candidate.distance.compareTo(distance) < 0)
+                .<Shrinkable<byte[]>>map(candidate -> candidate);
+    }
+
+    @Override
+    public ShrinkingDistance distance() {
+        return distance;
+    }
+
+    @Override
+    public String toString() {
+        return "XmlShrinkable<" + new String(xml, StandardCharsets.UTF_8) + ">";
+    }
+}
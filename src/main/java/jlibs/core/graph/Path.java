@@ -15,26 +15,37 @@
 
 package jlibs.core.graph;
 
+import java.util.Arrays;
+
 /**
  * @author Santhosh Kumar T
  */
 public final class Path{
     private Path parentPath;
-    private final Object elem;
-    private final int index;
+    private Object elem;
+    private int index;
+    private final int length;
+    private int recursionDepth = -1;
     public boolean lastElem = false;
 
+    // memoized results of getParentPath(Class), as class/path pairs
+    private Object[] parentsOfType;
+    private int parentsOfTypeSize;
+
     public Path(Object elem){
         if(elem==null)
             throw new IllegalArgumentException("element in path must be non null");
         this.elem = elem;
         this.index = 0;
+        this.length = 1;
+        this.recursionDepth = 0;
     }
 
     private Path(Path parentPath, Object elem, int index){
         this.parentPath = parentPath;
         this.elem = elem;
         this.index = index;
+        this.length = parentPath.length+1;
     }
 
     public Path append(Object elem){
@@ -47,15 +58,50 @@ public final class Path{
         return new Path(this, elem, index);
     }
 
+    /**
+     * Replaces the last element of this path, keeping its parent path.
+     * Used by walkers which reuse their paths.
+     *
+     * @see jlibs.core.graph.walkers.PreorderWalker#PreorderWalker(Sequence, Navigator, boolean)
+     */
+    public void setElement(Object elem, int index){
+        if(elem==null)
+            throw new IllegalArgumentException("element in path must be non null");
+        this.elem = elem;
+        this.index = index;
+        lastElem = false;
+        recursionDepth = parentPath==null ? 0 : -1;
+        parentsOfTypeSize = 0;
+    }
+
+    /**
+     * Sets the number of times the element of this path occurs in its parent path,
+     * so that {@link #getRecursionDepth()} need not compute it.
+     * Used by walkers which count the occurrences of the elements in their current path.
+     */
+    public void setRecursionDepth(int recursionDepth){
+        this.recursionDepth = recursionDepth;
+    }
+
     public Path getParentPath(){
         return parentPath;
     }
 
     public Path getParentPath(Class clazz){
-        Path path = this;
-        do{
-            path = path.parentPath;
-        }while(path!=null && !clazz.isInstance(path.elem));
+        for(int i=0; i<parentsOfTypeSize; i+=2){
+            if(parentsOfType[i]==clazz)
+                return (Path)parentsOfType[i+1];
+        }
+        Path path = parentPath;
+        if(path!=null && !clazz.isInstance(path.elem))
+            path = path.getParentPath(clazz);
+
+        if(parentsOfType==null)
+            parentsOfType = new Object[4];
+        else if(parentsOfTypeSize==parentsOfType.length)
+            parentsOfType = Arrays.copyOf(parentsOfType, parentsOfTypeSize<<1);
+        parentsOfType[parentsOfTypeSize++] = clazz;
+        parentsOfType[parentsOfTypeSize++] = path;
         return path;
     }
 
@@ -70,42 +116,41 @@ public final class Path{
     public Object getElement(int i){
         if(i<0)
             throw new IndexOutOfBoundsException("negative index: "+i);
-        int len = getLength();
-        if(i>=len)
+        if(i>=length)
             throw new IndexOutOfBoundsException(String.format("index %d is out of range", i));
-        len--;
         Path path = this;
-        while(len!=i)
+        for(int len=length-1; len!=i; len--)
             path = path.parentPath;
         return path.elem;
     }
 
     public int getLength(){
-        int len = 0;
-        for(Path path=this; path!=null; path=path.parentPath)
-            len++;
-        return len;
+        return length;
     }
 
     public Object[] toArray(){
-        Object[] array = new Object[getLength()];
+        Object[] array = new Object[length];
         Path path = this;
-        for(int i=getLength(); i>0; i--){
-            array[--i] = path.elem;
+        for(int i=length-1; i>=0; i--){
+            array[i] = path.elem;
             path = path.parentPath;
         }
         return array;
     }
 
+    /**
+     * Returns how many times the element of this path occurs in its parent path.
+     */
     public int getRecursionDepth(){
-        int depth = -1;
-        Path path = this;
-        for(int i=getLength(); i>0; i--){
-            if(path.elem==elem)
-                depth++;
-            path = path.parentPath;
+        if(recursionDepth<0){
+            int depth = 0;
+            for(Path path=parentPath; path!=null; path=path.parentPath){
+                if(path.elem==elem)
+                    depth++;
+            }
+            recursionDepth = depth;
         }
-        return depth;
+        return recursionDepth;
     }
 
     public String toString(){
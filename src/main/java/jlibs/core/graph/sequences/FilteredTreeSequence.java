@@ -19,7 +19,7 @@ import jlibs.core.graph.Navigator;
 import jlibs.core.graph.Sequence;
 import jlibs.core.graph.Filter;
 
-import java.util.Stack;
+import java.util.Arrays;
 
 /**
  * @author Santhosh Kumar T
@@ -38,22 +38,30 @@ public class FilteredTreeSequence<E> extends AbstractSequence<E> {
 
     /*-------------------------------------------------[ Advancing ]---------------------------------------------------*/
 
-    private final Stack<Sequence<? extends E>> stack = new Stack<Sequence<? extends E>>();
-    
+    @SuppressWarnings("unchecked")
+    private Sequence<? extends E>[] stack = (Sequence<? extends E>[])new Sequence<?>[8];
+    private int size;
+
     @Override
     protected E findNext(){
-        while(!stack.isEmpty()){
-            E elem = stack.peek().next();
+        while(size>0){
+            E elem = stack[size-1].next();
             if(elem==null)
-                stack.pop();
+                stack[--size] = null;
             else if(filter.select(elem))
                 return elem;
             else
-                stack.push(navigator.children(elem));
+                push(navigator.children(elem));
         }
         return null;
     }
 
+    private void push(Sequence<? extends E> seq){
+        if(size==stack.length)
+            stack = Arrays.copyOf(stack, size<<1);
+        stack[size++] = seq;
+    }
+
     /*-------------------------------------------------[ Reuse ]---------------------------------------------------*/
     
     @Override
@@ -63,9 +71,10 @@ public class FilteredTreeSequence<E> extends AbstractSequence<E> {
     }
 
     private void _reset(){
-        stack.clear();
+        while(size>0)
+            stack[--size] = null;
         seq.reset();
-        stack.push(seq);
+        push(seq);
     }
 
     @Override
@@ -24,7 +24,7 @@ import jlibs.core.graph.Sequence;
  * @author Santhosh Kumar T
  */
 public class RepeatSequence<E> extends AbstractSequence<E> {
-    private Sequence<E> sequence;
+    private final Sequence<E> sequence;
     private final int count;
 
     public RepeatSequence(Sequence<E> sequence, int count){
@@ -48,7 +48,7 @@ public class RepeatSequence<E> extends AbstractSequence<E> {
                 pos++;
                 if(pos==count)
                     return null;
-                sequence = sequence.copy();
+                sequence.reset();
             }else
                 return next;
         }
@@ -63,7 +63,7 @@ public class RepeatSequence<E> extends AbstractSequence<E> {
     }
 
     private void _reset(){
-        sequence = sequence.copy();
+        sequence.reset();
         pos = 0;
     }
 
@@ -15,48 +15,99 @@
 
 package jlibs.core.graph.visitors;
 
-import jlibs.core.graph.Sequence;
 import jlibs.core.graph.Visitor;
-import jlibs.core.graph.sequences.IterableSequence;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Dispatches {@link #visit(Object)} to the {@code process} method of the subclass
+ * with the most specific parameter type.
+ * <p>
+ * The {@code process} methods of a visitor class are collected and sorted only once
+ * per visitor class, and the matching method for each concrete element class is resolved
+ * only once and invoked through a {@link MethodHandle}.
+ *
  * @author Santhosh Kumar T
  */
 public abstract class ReflectionVisitor<E, R> implements Visitor<E, R>{
-    private final Map<Class<?>, Method> methodMap = new HashMap<Class<?>, Method>();
-    private Sequence<Class<?>> seq;
-
-    private void sort(){
-        Class clazz = getClass();
-        do{
-            for(Method method: clazz.getDeclaredMethods()){
-                if(method.getName().equals("process")){
-                    Class<?>[] params = method.getParameterTypes();
-                    if(params.length==1 && !methodMap.containsKey(params[0])){
-                        methodMap.put(params[0], method);
-                        method.setAccessible(true);
+    private static final MethodType HANDLER_TYPE = MethodType.methodType(Object.class, ReflectionVisitor.class, Object.class);
+
+    private static final ClassValue<Dispatcher> DISPATCHERS = new ClassValue<Dispatcher>(){
+        @Override
+        protected Dispatcher computeValue(Class<?> visitorClass){
+            return new Dispatcher(visitorClass);
+        }
+    };
+
+    private static final class Handler{
+        final MethodHandle handle;
+
+        Handler(MethodHandle handle){
+            this.handle = handle;
+        }
+    }
+
+    private static final class Dispatcher{
+        final List<Class<?>> classes;
+        final Map<Class<?>, MethodHandle> handles = new HashMap<Class<?>, MethodHandle>();
+
+        // kept by the dispatcher rather than in a ClassValue of the element classes,
+        // which would keep the visitor class loaded as long as any element class
+        final Map<Class<?>, Handler> handlers = new ConcurrentHashMap<Class<?>, Handler>();
+
+        Dispatcher(Class<?> visitorClass){
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> clazz = visitorClass;
+            do{
+                for(Method method: clazz.getDeclaredMethods()){
+                    if(method.getName().equals("process")){
+                        Class<?>[] params = method.getParameterTypes();
+                        if(params.length==1 && !handles.containsKey(params[0])){
+                            method.setAccessible(true);
+                            try{
+                                handles.put(params[0], lookup.unreflect(method).asType(HANDLER_TYPE));
+                            }catch(IllegalAccessException ex){
+                                throw new RuntimeException(ex);
+                            }
+                        }
                     }
                 }
-            }
-            clazz = clazz.getSuperclass();
-        }while(clazz!=null);
+                clazz = clazz.getSuperclass();
+            }while(clazz!=null);
+
+            classes = ClassSorter.sort(handles.keySet());
+        }
 
-        seq = new IterableSequence<Class<?>>(ClassSorter.sort(methodMap.keySet()));
+        Handler handler(Class<?> elemClass){
+            Handler handler = handlers.get(elemClass);
+            if(handler==null){
+                handler = new Handler(null);
+                for(Class<?> clazz: classes){
+                    if(clazz.isAssignableFrom(elemClass)){
+                        handler = new Handler(handles.get(clazz));
+                        break;
+                    }
+                }
+                handlers.put(elemClass, handler);
+            }
+            return handler;
+        }
     }
 
+    private final Dispatcher dispatcher = DISPATCHERS.get(getClass());
+
     public void generateCode(){
-        if(seq==null)
-            sort();
-        else
-            seq.reset();
-        
-        for(Class<?> clazz; (clazz=seq.next())!=null;){
+        for(int i=0; i<dispatcher.classes.size(); i++){
+            Class<?> clazz = dispatcher.classes.get(i);
             System.out.print("        ");
-            if(seq.index()!=0)
+            if(i!=0)
                 System.out.print("else ");
             System.out.format("if(elem instanceof %s)%n", clazz.getSimpleName());
             System.out.format("            return process((%s)elem);%n", clazz.getSimpleName());
@@ -69,18 +120,14 @@ public abstract class ReflectionVisitor<E, R> implements Visitor<E, R>{
     @SuppressWarnings({"unchecked"})
     public R visit(E elem){
         if(elem!=null){
-            if(seq==null)
-                sort();
-            else
-                seq.reset();
-
-            for(Class<?> clazz; (clazz=seq.next())!=null;){
-                if(clazz.isAssignableFrom(elem.getClass())){
-                    try{
-                        return (R)methodMap.get(clazz).invoke(this, elem);
-                    }catch(Exception ex){
-                        throw new RuntimeException(ex);
-                    }
+            MethodHandle handle = dispatcher.handler(elem.getClass()).handle;
+            if(handle!=null){
+                try{
+                    return (R)(Object)handle.invokeExact((ReflectionVisitor)this, (Object)elem);
+                }catch(RuntimeException | Error ex){
+                    throw ex;
+                }catch(Throwable ex){
+                    throw new RuntimeException(ex);
                 }
             }
         }
@@ -22,7 +22,9 @@ import jlibs.core.graph.sequences.AbstractSequence;
 import jlibs.core.graph.sequences.DuplicateSequence;
 import jlibs.core.graph.sequences.EmptySequence;
 
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
  * @author Santhosh Kumar T
@@ -30,10 +32,22 @@ import java.util.Stack;
 public class PreorderWalker<E> extends AbstractSequence<E> implements Walker<E>{
     private final Sequence<? extends E> seq;
     private final Navigator<E> navigator;
+    private final boolean reusePaths;
 
     public PreorderWalker(Sequence<? extends E> seq, Navigator<E> navigator){
+        this(seq, navigator, false);
+    }
+
+    /**
+     * @param reusePaths    if true, one {@link Path} per depth is reused for all elements at that depth,
+     *                      so that walking allocates nothing per element besides the children sequences.
+     *                      A path returned by {@link #getCurrentPath()} is then only valid until the
+     *                      walker moves to the next element.
+     */
+    public PreorderWalker(Sequence<? extends E> seq, Navigator<E> navigator, boolean reusePaths){
         this.seq = seq;
         this.navigator = navigator;
+        this.reusePaths = reusePaths;
         _reset();
     }
 
@@ -41,6 +55,10 @@ public class PreorderWalker<E> extends AbstractSequence<E> implements Walker<E>{
         this(new DuplicateSequence<E>(elem), navigator);
     }
 
+    public PreorderWalker(E elem, Navigator<E> navigator, boolean reusePaths){
+        this(new DuplicateSequence<E>(elem), navigator, reusePaths);
+    }
+
     /*-------------------------------------------------[ Reuse ]---------------------------------------------------*/
 
     @Override
@@ -51,54 +69,95 @@ public class PreorderWalker<E> extends AbstractSequence<E> implements Walker<E>{
 
     private void _reset(){
         path = null;
-        stack.clear();
-        stack.push(new Children(seq.copy()));
+        occurrences.clear();
+        while(size>0)
+            pop();
+        push(seq.copy());
     }
 
     @Override
     public PreorderWalker<E> copy(){
-        return new PreorderWalker<E>(seq.copy(), navigator);
+        return new PreorderWalker<E>(seq.copy(), navigator, reusePaths);
     }
 
-    /*-------------------------------------------------[ Reuse ]---------------------------------------------------*/
-    
-    private final Stack<Children> stack = new Stack<Children>();
+    /*-------------------------------------------------[ Frames ]---------------------------------------------------*/
+
+    // frame i holds the children of the i-th element of the current path
+    @SuppressWarnings("unchecked")
+    private Sequence<? extends E>[] seqs = (Sequence<? extends E>[])new Sequence<?>[16];
+    private boolean[] breakpoints = new boolean[16];
+    private Path[] paths = new Path[16];
+    private int size;
     private Path path;
 
-    private class Children{
-        boolean breakpoint;
-        Sequence<? extends E> seq;
+    // number of times each element occurs in the current path
+    private final Map<Object, int[]> occurrences = new IdentityHashMap<Object, int[]>();
 
-        public Children(Sequence<? extends E> seq){
-            this.seq = seq;
+    private int enter(Object elem){
+        int[] count = occurrences.get(elem);
+        if(count==null)
+            occurrences.put(elem, count=new int[1]);
+        return count[0]++;
+    }
+
+    private void leave(Object elem){
+        int[] count = occurrences.get(elem);
+        if(--count[0]==0)
+            occurrences.remove(elem);
+    }
+
+    private void push(Sequence<? extends E> seq){
+        if(size==seqs.length){
+            seqs = Arrays.copyOf(seqs, size<<1);
+            breakpoints = Arrays.copyOf(breakpoints, size<<1);
+            paths = Arrays.copyOf(paths, size<<1);
         }
+        seqs[size] = seq;
+        breakpoints[size] = false;
+        size++;
+    }
+
+    private void pop(){
+        seqs[--size] = null;
     }
 
     @Override
     protected E findNext(){
         // pop empty sequences
-        while(!stack.isEmpty()){
-            Children elem = stack.peek();
-            if(elem.seq.next()==null){
-                if(elem.breakpoint)
+        while(size>0){
+            if(seqs[size-1].next()==null){
+                if(breakpoints[size-1])
                     return null;
                 else{
-                    stack.pop();
-                    if(path!=null)
+                    pop();
+                    if(path!=null){
+                        leave(path.getElement());
                         path = path.getParentPath();
+                    }
                 }
             }else
                 break;
         }
-        
-        if(stack.isEmpty())
+
+        if(size==0)
             return null;
         else{
-            Sequence<? extends E> peekSeq = stack.peek().seq;
+            Sequence<? extends E> peekSeq = seqs[size-1];
             E current = peekSeq.current();
-            path = path==null ? new Path(current) : path.append(current, peekSeq.index());
+            if(!reusePaths)
+                path = path==null ? new Path(current) : path.append(current, peekSeq.index());
+            else{
+                int depth = size-1;
+                Path reuse = paths[depth];
+                if(reuse==null)
+                    reuse = paths[depth] = path==null ? new Path(current) : path.append(current, peekSeq.index());
+                else
+                    reuse.setElement(current, depth==0 ? 0 : peekSeq.index());
+                path = reuse;
+            }
+            path.setRecursionDepth(enter(current));
             path.lastElem = !peekSeq.hasNext();
-            stack.push(new Children(navigator.children(current)));
+            push(navigator.children(current));
             return current;
         }
     }
@@ -110,25 +169,25 @@ public class PreorderWalker<E> extends AbstractSequence<E> implements Walker<E>{
     }
 
     public void skip(){
-        if(stack.isEmpty())
+        if(size==0)
             throw new IllegalStateException("can't skip of descendants of null");
-        stack.peek().seq = EmptySequence.getInstance();
+        seqs[size-1] = EmptySequence.getInstance();
     }
     
     public void addBreakpoint(){
-        if(stack.isEmpty())
+        if(size==0)
             throw new IllegalStateException("can't add breakpoint on empty sequence");
-        stack.peek().breakpoint = true;
+        breakpoints[size-1] = true;
     }
 
     public boolean isPaused(){
-        return !stack.isEmpty() && stack.peek().breakpoint;
+        return size>0 && breakpoints[size-1];
     }
 
     @SuppressWarnings("unchecked")
     public void resume(){
         if(isPaused()){
-            stack.peek().breakpoint = false;
+            breakpoints[size-1] = false;
             current.set(current.index()-1, (E)path.getElement());
         }
     }
@@ -22,6 +22,9 @@ import java.util.Random;
  */
 public class RandomUtil {
 
+    /** longs up to this magnitude are exact as doubles */
+    private static final long EXACT_DOUBLE = 1L<<53;
+
     private final Random random;
 
     public RandomUtil(Random random) {
@@ -36,10 +39,31 @@ public class RandomUtil {
         return (float)(min+random.nextDouble()*(max-min));
     }
 
+    /**
+     * Bounds beyond the exact range of doubles, +-2^53, are supported without losing precision.
+     */
     public long random(long min, long max){
-        return Math.round(min+random.nextDouble()*(max-min));
+        if(min>-EXACT_DOUBLE && max<EXACT_DOUBLE)
+            return Math.round(min+random.nextDouble()*(max-min));
+        long span = max-min;
+        if(span<0){ // more than Long.MAX_VALUE values, at least half of the longs are in range
+            long value;
+            do{
+                value = random.nextLong();
+            }while(value<min || value>max);
+            return value;
+        }
+        if(span==Long.MAX_VALUE)
+            return min+(random.nextLong()>>>1);
+        long value, bits;
+        do{ // unbiased, see Random.nextInt(int)
+            bits = random.nextLong()>>>1;
+            value = bits%(span+1);
+        }while(bits-value+span<0);
+        return min+value;
     }
 
+
     public int random(int min, int max){
         return (int)Math.round(min+random.nextDouble()*(max-min));
     }
@@ -56,6 +80,13 @@ public class RandomUtil {
         return random.nextDouble()<0.5d;
     }
 
+    /**
+     * Returns a uniformly distributed int in {@code [0,bound)}.
+     */
+    public int randomIndex(int bound){
+        return random.nextInt(bound);
+    }
+
     public boolean randomBoolean(Boolean bool){
         if(Boolean.TRUE.equals(bool))
             return true;
@@ -64,4 +95,64 @@ public class RandomUtil {
         else // random either 0 or 1
             return randomBoolean();
     }
+
+    /**
+     * Moves {@code count} randomly chosen elements of {@code array[from,to)} to the
+     * start of that range, in random order (partial Fisher-Yates shuffle).
+     */
+    public void shuffle(int[] array, int from, int to, int count){
+        for(int i=from, end=Math.min(from+count, to-1); i<end; i++){
+            int j = i+randomIndex(to-i);
+            int tmp = array[i];
+            array[i] = array[j];
+            array[j] = tmp;
+        }
+    }
+
+    /**
+     * Moves {@code count} randomly chosen elements of {@code array} to its
+     * start, in random order (partial Fisher-Yates shuffle).
+     */
+    public <T> void shuffle(T[] array, int count){
+        for(int i=0, end=Math.min(count, array.length-1); i<end; i++){
+            int j = i+randomIndex(array.length-i);
+            T tmp = array[i];
+            array[i] = array[j];
+            array[j] = tmp;
+        }
+    }
+
+    /**
+     * Marks the start of a group of related random values, which ends with
+     * the matching {@link #endGroup()}. Groups can be nested.
+     * <p>
+     * Does nothing by default. Subclasses recording the random values they
+     * return can use the groups to structure them.
+     */
+    public void startGroup(){}
+
+    public void endGroup(){}
+
+    /**
+     * Marks the start of the random values of one generated value, such as a number
+     * or a string matching a pattern, which ends with the matching {@link #endValue()}.
+     * Choices among a few alternatives, like enumerations, are not marked.
+     * <p>
+     * Does nothing by default. Subclasses enumerating the choices can use the marks
+     * to fix the values instead.
+     */
+    public void startValue(){}
+
+    public void endValue(){}
+
+    /**
+     * Whether strings with a maximum length are filled up to it, instead of being as
+     * short as their other facets allow. Draws no random value, so that the values
+     * following it are the same either way.
+     * <p>
+     * Returns false by default. Subclasses generating maximal values return true.
+     */
+    public boolean fillsToMaxLength(){
+        return false;
+    }
 }
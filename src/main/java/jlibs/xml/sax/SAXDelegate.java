@@ -116,6 +116,16 @@ public class SAXDelegate implements EntityResolver, DTDHandler, ContentHandler,
             contentHandler.characters(ch, start, length);
     }
 
+    /**
+     * Reports the text, handing the string itself to a {@link XMLWriter} instead of a copy of its chars.
+     */
+    public void characters(String text) throws SAXException{
+        if(contentHandler instanceof XMLWriter)
+            ((XMLWriter)contentHandler).characters(text);
+        else if(contentHandler != null)
+            contentHandler.characters(text.toCharArray(), 0, text.length());
+    }
+
     @Override
     public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException{
         if(contentHandler != null)
@@ -262,6 +272,16 @@ public class SAXDelegate implements EntityResolver, DTDHandler, ContentHandler,
             lexicalHandler.comment(ch, start, length);
     }
 
+    /**
+     * Reports the comment, handing the string itself to a {@link XMLWriter} instead of a copy of its chars.
+     */
+    public void comment(String text) throws SAXException{
+        if(lexicalHandler instanceof XMLWriter)
+            ((XMLWriter)lexicalHandler).comment(text);
+        else if(lexicalHandler!=null)
+            lexicalHandler.comment(text.toCharArray(), 0, text.length());
+    }
+
     /*-------------------------------------------------[ DeclHandler ]---------------------------------------------------*/
 
     private DeclHandler declHandler;
@@ -105,12 +105,6 @@ public class XMLDocument{
         return nsSupport.declarePrefix(prefix, uri);
     }
 
-    private QName declareQName(String uri, String localPart){
-        if(uri==null)
-            uri = "";
-        return new QName(uri, localPart, declarePrefix(uri));
-    }
-
     public String toQName(String uri, String localPart){
         if(uri==null)
             uri = "";
@@ -134,8 +128,21 @@ public class XMLDocument{
 
     /*-------------------------------------------------[ start-element ]---------------------------------------------------*/
 
-    private final Stack<QName> elemStack = new Stack<QName>();
-    private QName elem;
+    /** an element started, with the qualified name it is written with */
+    private static final class Element{
+        final String uri, localPart, qName;
+        /** true if prefixes were declared with it */
+        boolean declared;
+
+        Element(String uri, String localPart, String qName){
+            this.uri = uri;
+            this.localPart = localPart;
+            this.qName = qName;
+        }
+    }
+
+    private final Stack<Element> elemStack = new Stack<Element>();
+    private Element elem;
 
     private int marks = -1;
     public int mark() throws SAXException{
@@ -149,7 +156,7 @@ public class XMLDocument{
             throw new SAXException("no mark found to be released");
         endElements();
         if(elemStack.peek()!=null)
-            throw new SAXException("expected </"+toString(elemStack.peek())+'>');
+            throw new SAXException("expected </"+elemStack.peek().qName+'>');
         elemStack.pop();
         return --marks;
     }
@@ -159,20 +166,17 @@ public class XMLDocument{
             release();
     }
 
-    private String toString(QName qname){
-        return qname.getPrefix().length()==0 ? qname.getLocalPart() : qname.getPrefix()+':'+qname.getLocalPart();
-    }
-
     private void finishStartElement() throws SAXException{
         if(elem!=null){
-            if(needsNewContext)
-                nsSupport.pushContext();
-            else
+            elem.declared = !needsNewContext;
+            if(elem.declared){
+                startPrefixMappings();
                 needsNewContext = true;
-            startPrefixMappings();
+            }else
+                nsSupport.pushContext();
 
             elemStack.push(elem);
-            xml.startElement(elem.getNamespaceURI(), elem.getLocalPart(), toString(elem), attrs);
+            xml.startElement(elem.uri, elem.localPart, elem.qName, attrs);
             elem = null;
             attrs.clear();
         }
@@ -186,7 +190,17 @@ public class XMLDocument{
         if(uri==null)
             uri = "";
         finishStartElement();
-        elem = declareQName(uri, name);
+        elem = new Element(uri, name, toQName(uri, name));
+        return this;
+    }
+
+    /**
+     * Starts an element whose qualified name is already known, the prefix of which
+     * must have been declared.
+     */
+    public XMLDocument startElement(String uri, String name, String qName) throws SAXException{
+        finishStartElement();
+        elem = new Element(uri, name, qName);
         return this;
     }
 
@@ -243,12 +257,24 @@ public class XMLDocument{
         return this;
     }
 
+    /**
+     * Adds an attribute whose qualified name is already known, the prefix of which
+     * must have been declared.
+     */
+    public XMLDocument addAttribute(String uri, String name, String qName, String value) throws SAXException{
+        if(elem==null)
+            throw new SAXException("no start element found to associate this attribute");
+        if(value!=null)
+            attrs.addAttribute(uri, name, qName, "CDATA", value);
+        return this;
+    }
+
     /*-------------------------------------------------[ Text ]---------------------------------------------------*/
 
     public XMLDocument addText(String text) throws SAXException{
         if(!StringUtil.isEmpty(text)){
             finishStartElement();
-            xml.characters(text.toCharArray(), 0, text.length());
+            xml.characters(text);
         }
         return this;
     }
@@ -265,27 +291,28 @@ public class XMLDocument{
 
     /*-------------------------------------------------[ end-element ]---------------------------------------------------*/
 
-    private QName findEndElement() throws SAXException{
+    private Element findEndElement() throws SAXException{
         finishStartElement();
         if(elemStack.empty() || elemStack.peek()==null)
             throw new SAXException("can't find matching start element");
         return elemStack.pop();
     }
 
-    private XMLDocument endElement(QName qname) throws SAXException{
-        xml.endElement(qname.getNamespaceURI(), qname.getLocalPart(), toString(qname));
+    private XMLDocument endElement(Element elem) throws SAXException{
+        xml.endElement(elem.uri, elem.localPart, elem.qName);
 
-        endPrefixMappings();
+        if(elem.declared)
+            endPrefixMappings();
         nsSupport.popContext();
         needsNewContext = true;
         return this;
     }
 
     public XMLDocument endElement(String uri, String name) throws SAXException{
-        QName qname = findEndElement();
-        if(!qname.getNamespaceURI().equals(uri) || !qname.getLocalPart().equals(name))
-            throw new SAXException("expected </"+toString(qname)+'>');
-        return endElement(qname);
+        Element elem = findEndElement();
+        if(!elem.uri.equals(uri) || !elem.localPart.equals(name))
+            throw new SAXException("expected </"+elem.qName+'>');
+        return endElement(elem);
     }
 
     public XMLDocument endElement(String name) throws SAXException{
@@ -299,10 +326,10 @@ public class XMLDocument{
     /*-------------------------------------------------[ end-elements ]---------------------------------------------------*/
 
     public XMLDocument endElements(String uri, String name) throws SAXException{
-        QName qname = findEndElement();
         while(true){
-            endElement(qname);
-            if(qname.getNamespaceURI().equals(uri) && qname.getLocalPart().equals(name))
+            Element elem = findEndElement();
+            endElement(elem);
+            if(elem.uri.equals(uri) && elem.localPart.equals(name))
                 break;
         }
         return this;
@@ -433,7 +460,7 @@ public class XMLDocument{
     public XMLDocument addComment(String text) throws SAXException{
         if(!StringUtil.isEmpty(text)){
             finishStartElement();
-            xml.comment(text.toCharArray(), 0, text.length());
+            xml.comment(text);
         }
         return this;
     }
@@ -0,0 +1,531 @@
+package jlibs.xml.sax;
+
+import jlibs.core.lang.ByteSequence;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Serializes sax events as UTF-8 encoded xml into a growable byte buffer.
+ * <p>
+ * This is a lightweight replacement for an identity {@link javax.xml.transform.sax.TransformerHandler}
+ * created by {@link jlibs.xml.xsl.TransformerUtil}, supporting the same {@code omitXMLDeclaration}
+ * and {@code indentAmount} options. The buffer is kept and reused by the next {@link #startDocument()}.
+ * <p>
+ * When created with an {@link OutputStream}, the buffer is written to it whenever it is full,
+ * so that documents of any size can be written with bounded memory. I/O errors are reported as
+ * {@link SAXException} wrapping the {@link IOException}.
+ * <p>
+ * Texts and comments can also be written from strings, see {@link SAXDelegate#characters(String)},
+ * and names are encoded once, as long as the same string instances are written again.
+ *
+ * @see XMLDocument#XMLDocument(SAXDelegate)
+ */
+public class XMLWriter implements ContentHandler, LexicalHandler{
+    private static final byte CONTENT_NONE = 0;
+    private static final byte CONTENT_MARKUP = 1;
+    private static final byte CONTENT_TEXT = 2;
+
+    private final boolean omitXMLDeclaration;
+    private final int indentAmount;
+    private final OutputStream out;
+
+    private byte[] buf;
+    private int count;
+    /** number of bytes written to out */
+    private long flushed;
+
+    public XMLWriter(boolean omitXMLDeclaration, int indentAmount){
+        this(omitXMLDeclaration, indentAmount, 1024);
+    }
+
+    /**
+     * @param omitXMLDeclaration    omit xml declaration or not
+     * @param indentAmount          the number fo spaces used for indentation.
+     *                              use <0, in case you dont want indentation
+     * @param initialSize           initial size of the byte buffer
+     */
+    public XMLWriter(boolean omitXMLDeclaration, int indentAmount, int initialSize){
+        this(null, omitXMLDeclaration, indentAmount, initialSize);
+    }
+
+    /**
+     * Creates a writer streaming to {@code out}, buffering at most {@code bufferSize} bytes
+     * unless a single name or text is longer. {@code out} is flushed, but not closed,
+     * by {@link #endDocument()}.
+     */
+    public XMLWriter(OutputStream out, boolean omitXMLDeclaration, int indentAmount, int bufferSize){
+        this.out = out;
+        this.omitXMLDeclaration = omitXMLDeclaration;
+        this.indentAmount = indentAmount;
+        buf = new byte[bufferSize];
+    }
+
+    /*-------------------------------------------------[ Output ]---------------------------------------------------*/
+
+    public int size(){
+        return count;
+    }
+
+    /** the length of the buffer, which keeps the size of the largest document written since it was created */
+    public int capacity(){
+        return buf.length;
+    }
+
+    public byte[] toByteArray(){
+        return Arrays.copyOf(buf, count);
+    }
+
+    /**
+     * Returns the serialized xml as {@link ByteSequence}.<br>
+     * Note that the internal buffer is not copied, and is overwritten
+     * by the next document.
+     */
+    public ByteSequence toByteSequence(){
+        return new ByteSequence(buf, 0, count);
+    }
+
+    /**
+     * Returns the serialized xml as read-only {@link ByteBuffer}.<br>
+     * Note that the internal buffer is not copied, and is overwritten
+     * by the next document.
+     */
+    public ByteBuffer toByteBuffer(){
+        return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+    }
+
+    public void writeTo(OutputStream out) throws IOException{
+        out.write(buf, 0, count);
+    }
+
+    public void reset(){
+        count = 0;
+        flushed = 0;
+        depth = 0;
+        startTagOpen = false;
+        inCDATA = false;
+        prefixCount = 0;
+    }
+
+    /*-------------------------------------------------[ Encoding ]---------------------------------------------------*/
+
+    private void ensureCapacity(int extra) throws SAXException{
+        if(count+extra>buf.length){
+            if(out!=null && count>0){
+                flushBuffer();
+                if(extra<=buf.length)
+                    return;
+            }
+            buf = Arrays.copyOf(buf, Math.max(buf.length<<1, count+extra));
+        }
+    }
+
+    private void flushBuffer() throws SAXException{
+        try{
+            out.write(buf, 0, count);
+        }catch(IOException ex){
+            throw new SAXException(ex);
+        }
+        flushed += count;
+        count = 0;
+    }
+
+    private void write(char ch) throws SAXException{
+        ensureCapacity(1);
+        buf[count++] = (byte)ch;
+    }
+
+    private void write(String str) throws SAXException{
+        write(str, 0, str.length());
+    }
+
+    private void write(CharSequence chars, int start, int end) throws SAXException{
+        ensureCapacity((end-start)*3);
+        for(int i=start; i<end; i++){
+            char ch = chars.charAt(i);
+            if(ch>=0x20 && ch<0x80)
+                buf[count++] = (byte)ch;
+            else
+                i = encode(chars, i, end);
+        }
+    }
+
+    private void write(char[] chars, int start, int end) throws SAXException{
+        ensureCapacity((end-start)*3);
+        for(int i=start; i<end; i++){
+            char ch = chars[i];
+            if(ch>=0x20 && ch<0x80)
+                buf[count++] = (byte)ch;
+            else
+                i = encode(chars[i], i+1<end ? chars[i+1] : 0, i);
+        }
+    }
+
+    private int encode(CharSequence chars, int i, int end) throws SAXException{
+        return encode(chars.charAt(i), i+1<end ? chars.charAt(i+1) : 0, i);
+    }
+
+    /**
+     * encodes the control or non-ascii char at index i, and returns the index of last char consumed;
+     * chars which are not allowed in xml 1.0, like lone surrogates, are rejected
+     */
+    private int encode(char ch, char next, int i) throws SAXException{
+        if(ch<0x20){
+            if(ch!='\t' && ch!='\n' && ch!='\r')
+                throw illegalChar(ch);
+            buf[count++] = (byte)ch;
+        }else if(ch<0x800){
+            buf[count++] = (byte)(0xC0 | ch>>6);
+            buf[count++] = (byte)(0x80 | ch&0x3F);
+        }else if(Character.isHighSurrogate(ch) && Character.isLowSurrogate(next)){
+            int cp = Character.toCodePoint(ch, next);
+            buf[count++] = (byte)(0xF0 | cp>>18);
+            buf[count++] = (byte)(0x80 | cp>>12&0x3F);
+            buf[count++] = (byte)(0x80 | cp>>6&0x3F);
+            buf[count++] = (byte)(0x80 | cp&0x3F);
+            return i+1;
+        }else if(Character.isSurrogate(ch) || ch>=0xFFFE){
+            throw illegalChar(ch);
+        }else{
+            buf[count++] = (byte)(0xE0 | ch>>12);
+            buf[count++] = (byte)(0x80 | ch>>6&0x3F);
+            buf[count++] = (byte)(0x80 | ch&0x3F);
+        }
+        return i;
+    }
+
+    private static SAXException illegalChar(char ch){
+        return new SAXException(String.format("character U+%04X is not allowed in xml", (int)ch));
+    }
+
+    private void writeEscaped(char[] chars, int start, int end, boolean attribute) throws SAXException{
+        int from = start;
+        for(int i=start; i<end; i++){
+            String ref = escape(chars[i], attribute);
+            if(ref!=null){
+                write(chars, from, i);
+                write(ref);
+                from = i+1;
+            }
+        }
+        write(chars, from, end);
+    }
+
+    private void writeEscaped(CharSequence str, boolean attribute) throws SAXException{
+        int from = 0;
+        int end = str.length();
+        for(int i=0; i<end; i++){
+            String ref = escape(str.charAt(i), attribute);
+            if(ref!=null){
+                write(str, from, i);
+                write(ref);
+                from = i+1;
+            }
+        }
+        write(str, from, end);
+    }
+
+    /** encoded names, by identity of the name string; the same instances are written for every element */
+    private final String[] names = new String[256];
+    private final byte[][] encodedNames = new byte[names.length][];
+
+    private void writeName(String name) throws SAXException{
+        int slot = System.identityHashCode(name) & (names.length-1);
+        byte[] encoded;
+        if(names[slot]==name)
+            encoded = encodedNames[slot];
+        else{
+            encoded = name.getBytes(StandardCharsets.UTF_8);
+            names[slot] = name;
+            encodedNames[slot] = encoded;
+        }
+        ensureCapacity(encoded.length);
+        System.arraycopy(encoded, 0, buf, count, encoded.length);
+        count += encoded.length;
+    }
+
+    private static String escape(char ch, boolean attribute){
+        switch(ch){
+            case '&':
+                return "&amp;";
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '\r':
+                return "&#13;";
+            case '"':
+                return attribute ? "&quot;" : null;
+            case '\n':
+                return attribute ? "&#10;" : null;
+            case '\t':
+                return attribute ? "&#9;" : null;
+            default:
+                return null;
+        }
+    }
+
+    /*-------------------------------------------------[ Indentation ]---------------------------------------------------*/
+
+    private byte[] content = new byte[16];
+    private int depth;
+    private boolean startTagOpen;
+
+    private void closeStartTag() throws SAXException{
+        if(startTagOpen){
+            write('>');
+            startTagOpen = false;
+        }
+    }
+
+    private void indent() throws SAXException{
+        if(indentAmount>=0 && flushed+count>0 && content[depth]!=CONTENT_TEXT){
+            ensureCapacity(1+depth*indentAmount);
+            buf[count++] = '\n';
+            for(int i=depth*indentAmount; i>0; i--)
+                buf[count++] = ' ';
+        }
+    }
+
+    private void markup() throws SAXException{
+        closeStartTag();
+        indent();
+        if(content[depth]==CONTENT_NONE)
+            content[depth] = CONTENT_MARKUP;
+    }
+
+    /*-------------------------------------------------[ ContentHandler ]---------------------------------------------------*/
+
+    @Override
+    public void setDocumentLocator(Locator locator){}
+
+    @Override
+    public void startDocument() throws SAXException{
+        reset();
+        content[0] = CONTENT_NONE;
+        if(!omitXMLDeclaration)
+            write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    }
+
+    @Override
+    public void endDocument() throws SAXException{
+        closeStartTag();
+        if(indentAmount>=0)
+            write('\n');
+        if(out!=null){
+            flushBuffer();
+            try{
+                out.flush();
+            }catch(IOException ex){
+                throw new SAXException(ex);
+            }
+        }
+    }
+
+    private String[] prefixes = new String[8];
+    private int prefixCount;
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException{
+        for(int i=0; i<prefixCount; i+=2){
+            if(prefixes[i].equals(prefix)){
+                prefixes[i+1] = uri;
+                return;
+            }
+        }
+        if(prefixCount+2>prefixes.length)
+            prefixes = Arrays.copyOf(prefixes, prefixes.length<<1);
+        prefixes[prefixCount++] = prefix;
+        prefixes[prefixCount++] = uri;
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException{}
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException{
+        markup();
+        write('<');
+        writeName(qName);
+        for(int i=0; i<atts.getLength(); i++){
+            write(' ');
+            writeName(atts.getQName(i));
+            write("=\"");
+            writeEscaped(atts.getValue(i), true);
+            write('"');
+        }
+        for(int i=0; i<prefixCount; i+=2){
+            write(prefixes[i].isEmpty() ? " xmlns" : " xmlns:");
+            writeName(prefixes[i]);
+            write("=\"");
+            writeEscaped(prefixes[i+1], true);
+            write('"');
+        }
+        prefixCount = 0;
+        startTagOpen = true;
+
+        if(++depth==content.length)
+            content = Arrays.copyOf(content, depth<<1);
+        content[depth] = CONTENT_NONE;
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException{
+        if(startTagOpen){
+            write("/>");
+            startTagOpen = false;
+            depth--;
+        }else{
+            boolean markupOnly = content[depth]==CONTENT_MARKUP;
+            depth--;
+            if(markupOnly)
+                indent();
+            write("</");
+            writeName(qName);
+            write('>');
+        }
+    }
+
+    private boolean inCDATA;
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException{
+        if(length==0)
+            return;
+        closeStartTag();
+        int end = start+length;
+        if(inCDATA){
+            int from = start;
+            for(int i=start; i+2<end; i++){
+                if(ch[i]==']' && ch[i+1]==']' && ch[i+2]=='>'){
+                    write(ch, from, i+2);
+                    write("]]><![CDATA[");
+                    from = i+2;
+                }
+            }
+            write(ch, from, end);
+        }else{
+            writeEscaped(ch, start, end, false);
+            if(content[depth]!=CONTENT_TEXT){
+                for(int i=start; i<end; i++){
+                    if(!Character.isWhitespace(ch[i])){
+                        content[depth] = CONTENT_TEXT;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #characters(char[], int, int)}, without copying the chars of the string.
+     */
+    public void characters(String text) throws SAXException{
+        if(text.isEmpty())
+            return;
+        if(inCDATA){
+            characters(text.toCharArray(), 0, text.length());
+            return;
+        }
+        closeStartTag();
+        writeEscaped(text, false);
+        if(content[depth]!=CONTENT_TEXT){
+            for(int i=0; i<text.length(); i++){
+                if(!Character.isWhitespace(text.charAt(i))){
+                    content[depth] = CONTENT_TEXT;
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException{
+        characters(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException{
+        markup();
+        write("<?");
+        write(target);
+        if(data!=null && !data.isEmpty()){
+            write(' ');
+            write(data);
+        }
+        write("?>");
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException{}
+
+    /*-------------------------------------------------[ LexicalHandler ]---------------------------------------------------*/
+
+    @Override
+    public void startDTD(String name, String publicId, String systemId) throws SAXException{
+        markup();
+        write("<!DOCTYPE ");
+        write(name);
+        if(publicId!=null){
+            write(" PUBLIC \"");
+            write(publicId);
+            write("\" \"");
+            write(systemId==null ? "" : systemId);
+            write('"');
+        }else if(systemId!=null){
+            write(" SYSTEM \"");
+            write(systemId);
+            write('"');
+        }
+        write('>');
+    }
+
+    @Override
+    public void endDTD() throws SAXException{}
+
+    @Override
+    public void startEntity(String name) throws SAXException{}
+
+    @Override
+    public void endEntity(String name) throws SAXException{}
+
+    @Override
+    public void startCDATA() throws SAXException{
+        closeStartTag();
+        write("<![CDATA[");
+        content[depth] = CONTENT_TEXT;
+        inCDATA = true;
+    }
+
+    @Override
+    public void endCDATA() throws SAXException{
+        write("]]>");
+        inCDATA = false;
+    }
+
+    @Override
+    public void comment(char[] ch, int start, int length) throws SAXException{
+        markup();
+        write("<!--");
+        write(ch, start, start+length);
+        write("-->");
+    }
+
+    /**
+     * Same as {@link #comment(char[], int, int)}, without copying the chars of the string.
+     */
+    public void comment(String text) throws SAXException{
+        markup();
+        write("<!--");
+        write(text);
+        write("-->");
+    }
+}
@@ -13,7 +13,23 @@ public class XSConfig {
     public Boolean generateFixedAttributes = null;
     public Boolean generateDefaultAttributes = null;
     public boolean generateAllChoices = true;
-    public boolean showContentModel = true;
+    /** comments the content model of elements having choices or repetitions, computed once per type of a schema */
+    public boolean showContentModel = false;
 
+    /** whether the written documents are indented */
+    public boolean prettyPrint = true;
+
+    /** how often an element may occur within itself; deeper occurrences are only generated if required */
+    public int maximumRecursionDepth = 2;
+
+    /**
+     * documents are kept within this many elements, and about this many bytes of markup, comments
+     * and values without indentation, unless the content required by the schema is larger
+     */
+    public int maximumTotalElements = Integer.MAX_VALUE;
+    public long maximumDocumentSize = Long.MAX_VALUE;
+
+    /** generators of values bound to elements, attributes and simple types */
+    public XSValueProviders valueProviders = XSValueProviders.EMPTY;
 
 }
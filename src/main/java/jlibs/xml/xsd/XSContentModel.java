@@ -114,7 +114,7 @@ public class XSContentModel extends ReflectionVisitor<Object, Processor<Object>>
     public String toString(XSComplexTypeDefinition complexType, MyNamespaceSupport nsSupport){
         buff.setLength(0);
         this.nsSupport = nsSupport;
-        WalkerUtil.walk(new PreorderWalker(complexType, new XSNavigator()), this);
+        WalkerUtil.walk(new PreorderWalker(complexType, new XSNavigator(), true), this);
         this.nsSupport = null;
         return buff.toString();
     }
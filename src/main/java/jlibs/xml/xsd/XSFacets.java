@@ -0,0 +1,106 @@
+package jlibs.xml.xsd;
+
+import org.apache.xerces.xs.*;
+
+import java.math.BigDecimal;
+
+/**
+ * Constraining facets of a simple type, parsed once from their lexical values.
+ * <p>
+ * Lengths and digits which are not constrained are -1, bounds which are not constrained are null.
+ * Instances are immutable.
+ */
+final class XSFacets{
+    final int length;
+    final int minLength;
+    final int maxLength;
+    final int totalDigits;
+    final int fractionDigits;
+
+    /** lexical values of the bounds */
+    final String minInclusive;
+    final String minExclusive;
+    final String maxInclusive;
+    final String maxExclusive;
+
+    /**
+     * the tighter of the inclusive and exclusive bounds as numbers, only for numeric types
+     * and only if they are finite numbers
+     */
+    final BigDecimal minValue;
+    final boolean minValueExclusive;
+    final BigDecimal maxValue;
+    final boolean maxValueExclusive;
+
+    final String[] enums;
+
+    XSFacets(XSSimpleTypeDefinition simpleType, boolean numeric){
+        int length = -1, minLength = -1, maxLength = -1, totalDigits = -1, fractionDigits = -1;
+        String minInclusive = null, minExclusive = null, maxInclusive = null, maxExclusive = null;
+        XSObjectList facets = simpleType.getFacets();
+        for(int i=0; i<facets.getLength(); i++){
+            XSFacet facet = (XSFacet)facets.item(i);
+            String value = facet.getLexicalFacetValue();
+            switch(facet.getFacetKind()){
+                case XSSimpleTypeDefinition.FACET_LENGTH:
+                    length = Integer.parseInt(value);
+                    break;
+                case XSSimpleTypeDefinition.FACET_MINLENGTH:
+                    minLength = Integer.parseInt(value);
+                    break;
+                case XSSimpleTypeDefinition.FACET_MAXLENGTH:
+                    maxLength = Integer.parseInt(value);
+                    break;
+                case XSSimpleTypeDefinition.FACET_TOTALDIGITS:
+                    totalDigits = Integer.parseInt(value);
+                    break;
+                case XSSimpleTypeDefinition.FACET_FRACTIONDIGITS:
+                    fractionDigits = Integer.parseInt(value);
+                    break;
+                case XSSimpleTypeDefinition.FACET_MININCLUSIVE:
+                    minInclusive = value;
+                    break;
+                case XSSimpleTypeDefinition.FACET_MINEXCLUSIVE:
+                    minExclusive = value;
+                    break;
+                case XSSimpleTypeDefinition.FACET_MAXINCLUSIVE:
+                    maxInclusive = value;
+                    break;
+                case XSSimpleTypeDefinition.FACET_MAXEXCLUSIVE:
+                    maxExclusive = value;
+            }
+        }
+        this.length = length;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.totalDigits = totalDigits;
+        this.fractionDigits = fractionDigits;
+        this.minInclusive = minInclusive;
+        this.minExclusive = minExclusive;
+        this.maxInclusive = maxInclusive;
+        this.maxExclusive = maxExclusive;
+
+        BigDecimal inclusive = numeric ? number(minInclusive) : null;
+        BigDecimal exclusive = numeric ? number(minExclusive) : null;
+        minValueExclusive = exclusive!=null && (inclusive==null || exclusive.compareTo(inclusive)>=0);
+        minValue = minValueExclusive ? exclusive : inclusive;
+
+        inclusive = numeric ? number(maxInclusive) : null;
+        exclusive = numeric ? number(maxExclusive) : null;
+        maxValueExclusive = exclusive!=null && (inclusive==null || exclusive.compareTo(inclusive)<=0);
+        maxValue = maxValueExclusive ? exclusive : inclusive;
+
+        enums = XSUtil.getEnumeratedValues(simpleType).toArray(new String[0]);
+    }
+
+    /** parses the lexical value of a numeric bound, returns null for INF, -INF and NaN */
+    private static BigDecimal number(String lexical){
+        if(lexical==null)
+            return null;
+        try{
+            return new BigDecimal(lexical.trim());
+        }catch(NumberFormatException ex){
+            return null;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package jlibs.xml.xsd;
+
+import jlibs.xml.Namespaces;
+import jlibs.xml.sax.helpers.MyNamespaceSupport;
+import org.apache.xerces.xs.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concrete subtypes of the complex types, and concrete members of the substitution groups,
+ * of a {@link XSModel}, found with one scan of its components instead of one per lookup.
+ * Content model comments of the complex types are computed when first asked for, and kept.
+ * Namespaces are given their prefixes once, as the names of documents and comments are written with them.
+ * <p>
+ * An index can be shared between threads.
+ */
+public final class XSIndex{
+    private final Map<XSComplexTypeDefinition, List<XSComplexTypeDefinition>> subTypes = new IdentityHashMap<XSComplexTypeDefinition, List<XSComplexTypeDefinition>>();
+    private final Map<XSElementDeclaration, List<XSElementDeclaration>> substitutes = new IdentityHashMap<XSElementDeclaration, List<XSElementDeclaration>>();
+
+    /** content models by type, an empty string for those without comment */
+    private final Map<XSComplexTypeDefinition, String> contentModels = new ConcurrentHashMap<XSComplexTypeDefinition, String>();
+
+    /** prefixes of the documents and content models, declared for all namespaces upfront so that they don't depend on the order of lookups */
+    private final MyNamespaceSupport nsSupport = new MyNamespaceSupport();
+
+    public XSIndex(XSModel xsModel){
+        XSNamedMap types = xsModel.getComponents(XSConstants.TYPE_DEFINITION);
+        XSObject anyType = types.itemByName(Namespaces.URI_XSD, "anyType");
+        for(int i=0; i<types.getLength(); i++){
+            XSObject item = types.item(i);
+            if(item instanceof XSComplexTypeDefinition && !((XSComplexTypeDefinition)item).getAbstract()){
+                XSTypeDefinition baseType = ((XSComplexTypeDefinition)item).getBaseType();
+                while(baseType!=anyType && baseType instanceof XSComplexTypeDefinition){
+                    add(subTypes, (XSComplexTypeDefinition)baseType, (XSComplexTypeDefinition)item);
+                    baseType = baseType.getBaseType();
+                }
+            }
+        }
+
+        XSNamedMap elements = xsModel.getComponents(XSConstants.ELEMENT_DECLARATION);
+        for(int i=0; i<elements.getLength(); i++){
+            XSElementDeclaration head = (XSElementDeclaration)elements.item(i);
+            XSObjectList substitutionGroup = xsModel.getSubstitutionGroup(head);
+            for(int j=0; substitutionGroup!=null && j<substitutionGroup.getLength(); j++){
+                XSElementDeclaration member = (XSElementDeclaration)substitutionGroup.item(j);
+                if(!member.getAbstract())
+                    add(substitutes, head, member);
+            }
+        }
+
+        nsSupport.pushContext();
+        nsSupport.declarePrefix(Namespaces.URI_XSI);
+        StringList namespaces = xsModel.getNamespaces();
+        for(int i=0; i<namespaces.getLength(); i++){
+            String uri = namespaces.item(i);
+            if(uri!=null && !uri.isEmpty() && !Namespaces.URI_XSD.equals(uri))
+                nsSupport.declarePrefix(uri);
+        }
+    }
+
+    private static <K, V> void add(Map<K, List<V>> map, K key, V value){
+        List<V> list = map.get(key);
+        if(list==null)
+            map.put(key, list=new ArrayList<V>());
+        list.add(value);
+    }
+
+    /**
+     * Returns the concrete complex types derived from the given one, in the order
+     * of {@link XSUtil#getSubTypes(XSModel, XSComplexTypeDefinition)}.
+     */
+    public List<XSComplexTypeDefinition> getSubTypes(XSComplexTypeDefinition complexType){
+        List<XSComplexTypeDefinition> list = subTypes.get(complexType);
+        return list==null ? Collections.<XSComplexTypeDefinition>emptyList() : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns the concrete elements which can substitute the given global element.
+     */
+    public List<XSElementDeclaration> getSubstitutes(XSElementDeclaration head){
+        List<XSElementDeclaration> list = substitutes.get(head);
+        return list==null ? Collections.<XSElementDeclaration>emptyList() : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns the prefix of the given namespace, the empty one for no namespace.
+     */
+    public String getPrefix(String uri){
+        synchronized(nsSupport){
+            return nsSupport.declarePrefix(uri==null ? "" : uri);
+        }
+    }
+
+    /**
+     * Returns the namespace the given prefix is bound to, or null if it is not.
+     */
+    public String getNamespaceURI(String prefix){
+        synchronized(nsSupport){
+            return nsSupport.getURI(prefix);
+        }
+    }
+
+    /**
+     * Returns the content model of the given type, as shown in comments before its elements,
+     * or null if its content is not element only or mixed, or doesn't have any choice or repetition.
+     */
+    public String getContentModel(XSComplexTypeDefinition complexType){
+        String contentModel = contentModels.get(complexType);
+        if(contentModel==null){
+            contentModel = "";
+            switch(complexType.getContentType()){
+                case XSComplexTypeDefinition.CONTENTTYPE_ELEMENT:
+                case XSComplexTypeDefinition.CONTENTTYPE_MIXED:
+                    String str;
+                    synchronized(nsSupport){
+                        str = new XSContentModel().toString(complexType, nsSupport);
+                    }
+                    for(char ch: "?*+|;[".toCharArray()){
+                        if(str.indexOf(ch)!=-1){
+                            contentModel = str;
+                            break;
+                        }
+                    }
+            }
+            contentModels.put(complexType, contentModel);
+        }
+        return contentModel.isEmpty() ? null : contentModel;
+    }
+}
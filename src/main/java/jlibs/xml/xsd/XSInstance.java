@@ -15,29 +15,22 @@
 
 package jlibs.xml.xsd;
 
-import jlibs.core.graph.*;
-import jlibs.core.graph.navigators.FilteredTreeNavigator;
-import jlibs.core.graph.sequences.DuplicateSequence;
-import jlibs.core.graph.sequences.IterableSequence;
-import jlibs.core.graph.sequences.RepeatSequence;
-import jlibs.core.graph.visitors.ReflectionVisitor;
-import jlibs.core.graph.walkers.PreorderWalker;
 import jlibs.core.lang.ImpossibleException;
 import jlibs.core.util.RandomUtil;
 import jlibs.xml.Namespaces;
 import jlibs.xml.sax.XMLDocument;
-import jlibs.xml.xsd.display.XSDisplayFilter;
+import org.apache.xerces.impl.dv.InvalidDatatypeValueException;
+import org.apache.xerces.impl.dv.XSSimpleType;
+import org.apache.xerces.impl.validation.ValidationState;
 import org.apache.xerces.xs.*;
 import org.xml.sax.SAXException;
 
 import javax.xml.namespace.QName;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 /**
  * @author Santhosh Kumar T
  */
-@SuppressWarnings({"unchecked"})
 public class XSInstance{
     
     private final RandomUtil randomUtil;
@@ -48,343 +41,373 @@ public class XSInstance{
         this.config = config;
     }
 
-    private int generateRepeatCount(int minOccurs, int maxOccurs){
-        if(minOccurs==0 && maxOccurs==1) //optional case
+    private int generateRepeatCount(XSPlan.Particle particle, XSConfig config){
+        if(particle.optional)
             return randomUtil.randomBoolean(config.generateOptionalElements) ? 1 : 0;
-
-        if(maxOccurs==-1)
-            maxOccurs = Math.max(minOccurs, config.maximumElementsGenerated);
-
-        int min, max;
-        if(config.minimumElementsGenerated>maxOccurs || config.maximumElementsGenerated<minOccurs){ // doesn't intersect
-            min = minOccurs;
-            max = maxOccurs;
-        }else { // find intersecting range
-            min = Math.max(minOccurs, config.minimumElementsGenerated);
-            max = Math.min(maxOccurs, config.maximumElementsGenerated);
-        }
-        return (min == max)
-                ? min
-                : randomUtil.random(min, max);
+        return (particle.minRepeat == particle.maxRepeat)
+                ? particle.minRepeat
+                : randomUtil.random(particle.minRepeat, particle.maxRepeat);
     }
 
+    /**
+     * Compiles the given model with the config of this instance and generates one sample.
+     * Use {@link XSPlan#compile(XSModel, QName, XSConfig)} and {@link #generate(XSPlan, XMLDocument)}
+     * to generate more than one sample of the same schema.
+     */
     public void generate(XSModel xsModel, QName rootElement, XMLDocument doc){
-        String namespace = rootElement.getNamespaceURI();
-        XSElementDeclaration root = xsModel.getElementDeclaration(rootElement.getLocalPart(), namespace);
-        if(root==null)
-            throw new IllegalArgumentException("Element "+rootElement+" is not found");
-
-        Navigator navigator = new FilteredTreeNavigator(new XSSampleNavigator(xsModel), new XSDisplayFilter(){
-            private boolean process(XSElementDeclaration elem){
-                return !elem.getAbstract();
-            }
+        generate(XSPlan.compile(xsModel, rootElement, config), doc);
+    }
 
-            protected boolean process(XSTypeDefinition type){
-                return type.getTypeCategory()==XSTypeDefinition.COMPLEX_TYPE;
-            }
-        });
+    /**
+     * Generates one sample of the given plan. The plan is used together with the config
+     * it was compiled with.
+     */
+    public void generate(XSPlan plan, XMLDocument doc){
         try{
             doc.startDocument();
-            doc.declarePrefix(Namespaces.URI_XSI);
-            if(!rootElement.getNamespaceURI().isEmpty())
-                doc.declarePrefix(rootElement.getPrefix(), rootElement.getNamespaceURI());
-            WalkerUtil.walk(new PreorderWalker(root, navigator), new XSSampleVisitor(doc));
+            for(int i=0; i<plan.prefixes.length; i++)
+                doc.declarePrefix(plan.prefixes[i], plan.namespaces[i]);
+            new Sample(plan, doc).particle(plan.root);
             doc.endDocument();
         }catch(SAXException ex){
             throw new ImpossibleException(ex);
         }
     }
 
-    private class XSSampleNavigator extends XSNavigator {
-        private final XSModel xsModel;
-        private XSSampleNavigator(XSModel xsModel){
-            this.xsModel = xsModel;
+    private class Sample{
+        private final XSConfig config;
+        private final XMLDocument doc;
+        private final String xsiType;
+
+        /** number of open occurrences of each element, indexed by element id */
+        private final int[] occurrences;
+        private int depth;
+
+        private Sample(XSPlan plan, XMLDocument doc){
+            this.config = plan.config;
+            this.doc = doc;
+            xsiType = plan.xsiType;
+            occurrences = new int[plan.elements.length];
         }
 
-        protected Sequence<XSTerm> process(XSParticle particle){
-            XSTerm term = particle.getTerm();
-            if(term instanceof XSModelGroup){
-                XSModelGroup group = (XSModelGroup) term;
-                if(group.getCompositor()==XSModelGroup.COMPOSITOR_CHOICE){
-                    XSObjectList particles = group.getParticles();
-                    int count = particles.getLength();
-                    if(!config.generateAllChoices && !particle.getMaxOccursUnbounded())
-                        count = Math.min(count, particle.getMaxOccurs());
-                    List<XSParticle> list = new ArrayList<XSParticle>(particles.getLength());
-                    for(int i=0; i<particles.getLength(); i++)
-                        list.add((XSParticle)particles.item(i));
-                    Collections.shuffle(list);
-                    return new IterableSequence(list.subList(0, count));
-                }
-            }
+        /** particle indexes of the choices and all groups being generated, used as a stack */
+        private int[] indexes = new int[16];
+        private int indexTop;
+
+        /**
+         * pushes the indexes 0 to n-1 with count of them randomly chosen at the front,
+         * and returns their start in {@link #indexes}
+         */
+        private int permute(int n, int count){
+            int from = indexTop;
+            if(from+n>indexes.length)
+                indexes = Arrays.copyOf(indexes, Math.max(indexes.length<<1, from+n));
+            for(int i=0; i<n; i++)
+                indexes[from+i] = i;
+            randomUtil.shuffle(indexes, from, from+n, count);
+            indexTop = from+n;
+            return from;
+        }
+
+        /*-------------------------------------------------[ Budgets ]---------------------------------------------------*/
+
+        /**
+         * required occurrences beyond {@link XSConfig#maximumRecursionDepth} are generated with their
+         * minimal content, which ends the recursion unless the schema has no finite valid document;
+         * in that case they are dropped after this many more levels
+         */
+        private static final int RECURSION_SLACK = 8;
+
+        private long totalElements;
+        private long size;
+
+        /** minimal cost of the content which is still to be generated after the current node */
+        private long pendingElements;
+        private long pendingSize;
+
+        /** number of open elements beyond the maximum recursion depth */
+        private int beyondRecursionDepth;
 
-            int maxOccurs = particle.getMaxOccursUnbounded() ? -1 : particle.getMaxOccurs();
-            int repeatCount = generateRepeatCount(particle.getMinOccurs(), maxOccurs);
-            return new RepeatSequence<XSTerm>(super.process(particle), repeatCount);
+        private void reserve(long elements, long size){
+            pendingElements = XSPlan.add(pendingElements, elements);
+            pendingSize = XSPlan.add(pendingSize, size);
         }
 
-        protected Sequence<XSParticle> process(XSModelGroup modelGroup){
-            String str;
-            if (modelGroup.getCompositor() == XSModelGroup.COMPOSITOR_ALL) {
-                XSObjectList particles = modelGroup.getParticles();
-                List<XSParticle> list = new ArrayList<XSParticle>(particles.getLength());
-                for (int i = 0; i < particles.getLength(); i++)
-                    list.add((XSParticle) particles.item(i));
-                Collections.shuffle(list);
-                return new IterableSequence<XSParticle>(list);
-            }
-            return super.process(modelGroup);
+        private void release(long elements, long size){
+            pendingElements -= elements;
+            pendingSize -= size;
         }
 
-        protected Sequence process(XSElementDeclaration elem){
-            if(elem.getAbstract()){
-                XSObjectList substitutionGroup = xsModel.getSubstitutionGroup(elem);
-                int rand = randomUtil.random(0, substitutionGroup.getLength() - 1);
-                return new DuplicateSequence(substitutionGroup.item(rand));
-            }
-            if(elem.getTypeDefinition() instanceof XSComplexTypeDefinition){
-                XSComplexTypeDefinition complexType = (XSComplexTypeDefinition) elem.getTypeDefinition();
-                if(complexType.getAbstract()){
-                    List<XSComplexTypeDefinition> subTypes = XSUtil.getSubTypes(xsModel, complexType);
-                    int rand = randomUtil.random(0, subTypes.size() - 1);
-                    return new DuplicateSequence<XSTypeDefinition>(subTypes.get(rand));
-                }
-            }
-            return new DuplicateSequence<XSTypeDefinition>(elem.getTypeDefinition());
+        private long availableElements(){
+            return config.maximumTotalElements-totalElements-pendingElements;
         }
-    }
 
-    private class XSSampleVisitor extends ReflectionVisitor<Object, Processor<Object>>{
-        private final XMLDocument doc;
-        private XSSampleVisitor(XMLDocument doc){
-            this.doc = doc;
+        private long availableSize(){
+            return config.maximumDocumentSize-size-pendingSize;
         }
 
-        @Override
-        protected Processor getDefault(Object elem){
-            return null;
+        /** true if content of the given cost can be generated in addition to the pending one */
+        private boolean fits(long elements, long size){
+            return elements<=availableElements() && size<=availableSize();
         }
 
-        protected Processor process(XSElementDeclaration elem){
-            return elemProcessor;
+        /** true if only required content is to be generated */
+        private boolean limited(){
+            return beyondRecursionDepth>0 || availableElements()<=0 || availableSize()<=0;
         }
 
-        protected Processor process(XSWildcard wildcard){
-            return wildcardProcessor;
+        private boolean limited(XSPlan.Particle particle){
+            return limited() || (particle.element!=null && occurrences[particle.element.id]>config.maximumRecursionDepth);
         }
 
-        protected Processor process(XSComplexTypeDefinition complexType){
-            return complexTypeProcessor;
+        /**
+         * returns how many of the given extra repetitions of the particle fit, in addition to
+         * its minOccurs ones whose cost is no longer pending
+         */
+        private int affordable(XSPlan.Particle particle, int extra){
+            long elements = availableElements()-particle.minElements;
+            long size = availableSize()-particle.minSize;
+            if(particle.termElements>0)
+                extra = (int)Math.max(0, Math.min(extra, elements/particle.termElements));
+            if(particle.termSize>0)
+                extra = (int)Math.max(0, Math.min(extra, size/particle.termSize));
+            return extra;
         }
 
-        protected Processor process(XSAttributeUse attr){
-            return attrProcessor;
+        /**
+         * returns a random one of the given options, or the cheapest one if the random one doesn't fit;
+         * the cost of the options must no longer be pending
+         */
+        private int choose(XSPlan.Cost[] options){
+            if(!limited()){
+                int i = randomUtil.random(0, options.length-1);
+                if(fits(options[i].minElements, options[i].minSize))
+                    return i;
+            }
+            return cheapest(options);
         }
 
-        private final Processor<XSElementDeclaration> elemProcessor = new Processor<XSElementDeclaration>(){
-            @Override
-            public boolean preProcess(XSElementDeclaration elem, Path path){
-                if(path.getRecursionDepth()>2)
-                    return false;
-                try{
-                    if(config.showContentModel && elem.getTypeDefinition() instanceof XSComplexTypeDefinition){
-                        XSComplexTypeDefinition complexType = (XSComplexTypeDefinition) elem.getTypeDefinition();
-                        switch(complexType.getContentType()){
-                            case XSComplexTypeDefinition.CONTENTTYPE_ELEMENT:
-                            case XSComplexTypeDefinition.CONTENTTYPE_MIXED:
-                                String contentModel = new XSContentModel().toString(complexType, doc.getNamespaceSupport());
-                                boolean showContentModel = false;
-                                for(char ch: "?*+|;[".toCharArray()){
-                                    if(contentModel.indexOf(ch)!=-1){
-                                        showContentModel = true;
-                                        break;
-                                    }
-                                }
-                                if(showContentModel){
-                                    int depth = 0;
-                                    while(true){
-                                        path = path.getParentPath(XSElementDeclaration.class);
-                                        if(path!=null)
-                                            depth++;
-                                        else
-                                            break;
-                                    }
-                                    doc.addText("\n");
-                                    for(int i=depth; i>0; i--)
-                                        doc.addText("   ");
-                                    doc.addComment(contentModel);
-                                    doc.addText("\n");
-                                    for(int i=depth; i>0; i--)
-                                        doc.addText("   ");
-                                }
-                        }
-                    }
-                    doc.startElement(elem.getNamespace(), elem.getName());
-                    return true;
-                }catch(SAXException ex){
-                    throw new ImpossibleException(ex);
-                }
+        private int cheapest(XSPlan.Cost[] options){
+            int cheapest = 0;
+            for(int i=1; i<options.length; i++){
+                if(options[i].cheaper(options[cheapest]))
+                    cheapest = i;
             }
+            return cheapest;
+        }
 
-            @Override
-            public void postProcess(XSElementDeclaration elem, Path path){
-                if(path.getRecursionDepth()>2)
-                    return;
-                try{
-                    XSSimpleTypeDefinition simpleType = null;
-                    if(elem.getTypeDefinition().getTypeCategory()==XSTypeDefinition.SIMPLE_TYPE)
-                        simpleType = (XSSimpleTypeDefinition)elem.getTypeDefinition();
-                    else{
-                        XSComplexTypeDefinition complexType = (XSComplexTypeDefinition)elem.getTypeDefinition();
-                        if(complexType.getContentType()==XSComplexTypeDefinition.CONTENTTYPE_SIMPLE)
-                            simpleType = complexType.getSimpleType();
-                    }
-                    if(simpleType!=null)
-                        doc.addText(generateSampleValue(simpleType, elem.getName()));
-                    doc.endElement();
-                }catch(SAXException ex){
-                    throw new ImpossibleException(ex);
-                }
+        /** true if the first count of the permuted choices starting at from fit */
+        private boolean fits(XSPlan.Particle[] particles, int from, int count){
+            long elements = 0;
+            long size = 0;
+            for(int i=0; i<count; i++){
+                XSPlan.Particle choice = particles[indexes[from+i]];
+                elements = XSPlan.add(elements, choice.minElements);
+                size = XSPlan.add(size, choice.minSize);
             }
-        };
+            return fits(elements, size);
+        }
 
-        private final Processor<XSAttributeUse> attrProcessor = new Processor<XSAttributeUse>(){
-            @Override
-            public boolean preProcess(XSAttributeUse attr, Path path){
-                try{
-                    XSAttributeDeclaration decl = attr.getAttrDeclaration();
-
-                    String sampleValue = null;
-                    switch(attr.getConstraintType()){
-                        case XSConstants.VC_FIXED:
-                            if(randomUtil.randomBoolean(config.generateFixedAttributes))
-                                sampleValue = attr.getConstraintValue();
-                            break;
-                        case XSConstants.VC_DEFAULT:
-                            if(randomUtil.randomBoolean(config.generateDefaultAttributes))
-                                sampleValue = attr.getConstraintValue();
-                            break;
-                        default:
-                            if(attr.getRequired() || randomUtil.randomBoolean(config.generateOptionalAttributes))
-                                sampleValue = generateSampleValue(decl.getTypeDefinition(), decl.getName());
-                            else
-                                sampleValue = randomUtil.randomBoolean(config.generateOptionalAttributesAsEmptyString) ? "" : null;
-                    }
-                    if(sampleValue!=null)
-                        doc.addAttribute(decl.getNamespace(), decl.getName(), sampleValue);
-                    return false;
-                }catch(SAXException ex){
-                    throw new ImpossibleException(ex);
+        /** sorts the permuted choices from from to indexTop by their cost, keeping the order of equal ones */
+        private void sortByCost(XSPlan.Particle[] particles, int from){
+            for(int i=from+1; i<indexTop; i++){
+                int index = indexes[i];
+                int j = i;
+                for(; j>from && particles[index].cheaper(particles[indexes[j-1]]); j--)
+                    indexes[j] = indexes[j-1];
+                indexes[j] = index;
+            }
+        }
+
+        /*-------------------------------------------------[ Generation ]---------------------------------------------------*/
+
+        /**
+         * generates the particle, whose minimal cost the caller has released from the pending cost
+         */
+        private void particle(XSPlan.Particle particle) throws SAXException{
+            if(particle.choice!=null){
+                XSPlan.Particle[] particles = particle.choice.particles;
+                int count = particle.choiceCount;
+                if(count>particle.minOccurs && limited())
+                    count = particle.minOccurs;
+                int from = permute(particles.length, count);
+                if(limited() || !fits(particles, from, count)){
+                    sortByCost(particles, from);
+                    if(!fits(particles, from, count))
+                        count = particle.minOccurs;
+                }
+                for(int i=0; i<count; i++){
+                    XSPlan.Particle choice = particles[indexes[from+i]];
+                    reserve(choice.minElements, choice.minSize);
                 }
+                for(int i=0; i<count; i++){
+                    XSPlan.Particle choice = particles[indexes[from+i]];
+                    release(choice.minElements, choice.minSize);
+                    randomUtil.startGroup();
+                    particle(choice);
+                    randomUtil.endGroup();
+                }
+                indexTop = from;
+                return;
             }
 
-            @Override
-            public void postProcess(XSAttributeUse elem, Path path){}
-        };
+            int count;
+            if(limited(particle))
+                count = particle.minOccurs;
+            else{
+                count = generateRepeatCount(particle, config);
+                if(count>particle.minOccurs)
+                    count = particle.minOccurs+affordable(particle, count-particle.minOccurs);
+            }
+            reserve(XSPlan.multiply(particle.termElements, count), XSPlan.multiply(particle.termSize, count));
+            for(int i=count; i>0; i--){
+                release(particle.termElements, particle.termSize);
+                randomUtil.startGroup();
+                if(particle.element!=null)
+                    element(particle.element);
+                else if(particle.group!=null)
+                    group(particle.group);
+                else
+                    wildcard(particle.wildcard, false);
+                randomUtil.endGroup();
+            }
+        }
 
-        private final Processor<XSComplexTypeDefinition> complexTypeProcessor = new Processor<XSComplexTypeDefinition>(){
-            @Override
-            public boolean preProcess(XSComplexTypeDefinition complexType, Path path){
-                try{
-                    XSElementDeclaration elem = (XSElementDeclaration)path.getParentPath().getElement();
-                    XSComplexTypeDefinition elemType = (XSComplexTypeDefinition)elem.getTypeDefinition();
-                    if(elemType.getAbstract())
-                        doc.addAttribute(Namespaces.URI_XSI, "type", doc.toQName(complexType.getNamespace(), complexType.getName()));
-                    return true;
-                }catch(SAXException ex){
-                    throw new ImpossibleException(ex);
+        private void group(XSPlan.Group group) throws SAXException{
+            reserve(group.minElements, group.minSize);
+            if(group.all){
+                XSPlan.Particle[] particles = group.particles;
+                int from = permute(particles.length, particles.length);
+                for(int i=0; i<particles.length; i++){
+                    XSPlan.Particle particle = particles[indexes[from+i]];
+                    release(particle.minElements, particle.minSize);
+                    particle(particle);
+                }
+                indexTop = from;
+            }else{
+                for(XSPlan.Particle particle: group.particles){
+                    release(particle.minElements, particle.minSize);
+                    particle(particle);
                 }
             }
+        }
 
-            @Override
-            public void postProcess(XSComplexTypeDefinition complexType, Path path){}
-        };
+        private void element(XSPlan.Element elem) throws SAXException{
+            if(elem.substitutes!=null){
+                if(elem.substitutes.length==0)
+                    throw new IllegalStateException("no concrete substitute found for abstract element "+elem.name);
+                element(elem.substitutes[choose(elem.substitutes)]);
+                return;
+            }
+            int recursionDepth = occurrences[elem.id];
+            if(recursionDepth>config.maximumRecursionDepth+RECURSION_SLACK)
+                return;
+            boolean beyond = recursionDepth>config.maximumRecursionDepth;
+            if(beyond)
+                beyondRecursionDepth++;
+
+            if(elem.contentModel!=null){
+                doc.addText("\n");
+                for(int i=depth; i>0; i--)
+                    doc.addText("   ");
+                doc.addComment(elem.contentModel);
+            }
+            doc.startElement(elem.namespace, elem.name, elem.qName);
+            totalElements++;
+            size += elem.size();
+
+            if(elem.types.length==0)
+                throw new IllegalStateException("no concrete subtype found for element "+elem.name);
+            XSPlan.Type type = elem.types.length==1 ? elem.types[0] : elem.types[choose(elem.types)];
+            if(elem.xsiType)
+                doc.addAttribute(Namespaces.URI_XSI, "type", xsiType, type.qName);
+
+            occurrences[elem.id]++;
+            depth++;
+            reserve(type.minElements, type.minSize);
+            for(XSPlan.Attribute attr: type.attributes)
+                attribute(attr);
+            if(type.attributeWildcard!=null)
+                wildcard(type.attributeWildcard, true);
+            release(type.minElements, type.minSize);
+            if(type.particle!=null)
+                particle(type.particle);
+            depth--;
+            occurrences[elem.id]--;
+
+            if(type.value!=null){
+                String text = elem.provider!=null ? provide(elem.provider) : generateSampleValue(type.value, elem.name);
+                size += text.length();
+                doc.addText(text);
+            }
+            doc.endElement();
+            if(beyond)
+                beyondRecursionDepth--;
+        }
 
-        private final Processor<XSWildcard> wildcardProcessor = new Processor<XSWildcard>(){
-            @Override
-            public boolean preProcess(XSWildcard wildcard, Path path){
-                try{
-                    String uri;
-                    switch(wildcard.getConstraintType()){
-                        case XSWildcard.NSCONSTRAINT_ANY:
-                            uri = "anyNS";
-                            break;
-                        case XSWildcard.NSCONSTRAINT_LIST:
-                            StringList list = wildcard.getNsConstraintList();
-                            int rand = randomUtil.random(0, list.getLength()-1);
-                            uri = list.item(rand);
-                            if(uri==null)
-                                uri = ""; // <xs:any namespace="##local"/> returns nsConstraintList with null
-                            break;
-                        case XSWildcard.NSCONSTRAINT_NOT:
-                            list = wildcard.getNsConstraintList();
-                            List<String> namespaces = new ArrayList<String>();
-                            for(int i=0; i<list.getLength(); i++)
-                                namespaces.add(list.item(i));
-                            uri = "anyNS";
-                            if(namespaces.contains(uri)){
-                                for(int i=1;;i++){
-                                    if(!namespaces.contains(uri+i)){
-                                        uri += i;
-                                        break;
-                                    }
-                                }
-                            }
-                            break;
-                        default:
-                            throw new ImpossibleException();
-                    }
-                    if(isAttribute(wildcard, path))
-                        doc.addAttribute(uri, "anyAttr", "anyValue");
+        private void attribute(XSPlan.Attribute attr) throws SAXException{
+            if(!attr.required && limited())
+                return;
+            String sampleValue;
+            switch(attr.constraintType){
+                case XSConstants.VC_FIXED:
+                    sampleValue = randomUtil.randomBoolean(config.generateFixedAttributes) ? attr.constraintValue : null;
+                    break;
+                case XSConstants.VC_DEFAULT:
+                    sampleValue = randomUtil.randomBoolean(config.generateDefaultAttributes) ? attr.constraintValue : null;
+                    break;
+                default:
+                    if(attr.required || randomUtil.randomBoolean(config.generateOptionalAttributes))
+                        sampleValue = attr.provider!=null ? provide(attr.provider) : generateSampleValue(attr.value, attr.name);
                     else
-                        doc.startElement(uri, "anyElement");
-                    return true;
-                }catch(SAXException ex){
-                    throw new ImpossibleException(ex);
-                }
+                        sampleValue = randomUtil.randomBoolean(config.generateOptionalAttributesAsEmptyString) ? "" : null;
             }
-
-            @Override
-            public void postProcess(XSWildcard wildcard, Path path){
-                try{
-                    if(!isAttribute(wildcard, path))
-                        doc.endElement();
-                }catch(SAXException ex){
-                    throw new ImpossibleException(ex);
-                }
+            if(sampleValue!=null){
+                size += XSPlan.attributeSize(attr.qName, sampleValue);
+                doc.addAttribute(attr.namespace, attr.name, attr.qName, sampleValue);
             }
+        }
 
-            private boolean isAttribute(XSWildcard wildcard, Path path){
-                if(path.getParentPath().getElement() instanceof XSComplexTypeDefinition){
-                    XSComplexTypeDefinition complexType = (XSComplexTypeDefinition) path.getParentPath().getElement();
-                    return complexType.getAttributeWildcard() == wildcard;
-                }
-                return false;
+        private void wildcard(XSPlan.Wildcard wildcard, boolean attribute) throws SAXException{
+            String[] namespaces = wildcard.namespaces;
+            String uri = namespaces.length==1 ? namespaces[0] : namespaces[randomUtil.random(0, namespaces.length-1)];
+            if(attribute)
+                doc.addAttribute(uri, "anyAttr", "anyValue");
+            else{
+                doc.startElement(uri, "anyElement");
+                totalElements++;
+                size += XSPlan.tagSize("anyElement");
+                doc.endElement();
             }
-        };
+        }
 
         private final Map<String, Integer> counters = new HashMap<String, Integer>();
 
-        private static final String XSD_DATE_FORMAT = "yyyy-MM-dd";
-        private static final String XSD_TIME_FORMAT = "HH:mm:ss";
+        private static final int PATTERN_ATTEMPTS = 20;
+
+        /** strings are filled up to their maxLength if the random says so, but not beyond this */
+        private static final int MAXIMUM_FILLED_LENGTH = 1024;
 
-        private String generateSampleValue(XSSimpleTypeDefinition simpleType, String hint){
-            if(simpleType.getBuiltInKind()==XSConstants.LIST_DT){
-                XSSimpleTypeDefinition itemType = simpleType.getItemType();
+        /** the value of a provider, which is marked as one value as the provider can draw anything */
+        private String provide(XSValueProvider provider){
+            randomUtil.startValue();
+            String value = provider.generate(randomUtil);
+            randomUtil.endValue();
+            return value;
+        }
 
+        private String generateSampleValue(XSPlan.Value value, String hint){
+            if(value.provider!=null)
+                return provide(value.provider);
+
+            XSFacets facets = value.facets;
+            if(value.variety==XSPlan.VARIETY_LIST){
                 int len;
-                XSFacet facet = getFacet(itemType, XSSimpleTypeDefinition.FACET_LENGTH);
-                if(facet!=null)
-                    len = Integer.parseInt(facet.getLexicalFacetValue());
+                if(facets.length>=0)
+                    len = facets.length;
                 else{
-                    int minOccurs = 0;
-                    facet = getFacet(itemType, XSSimpleTypeDefinition.FACET_MINLENGTH);
-                    if(facet!=null)
-                        minOccurs = Integer.parseInt(facet.getLexicalFacetValue());
-                    int maxOccurs = -1;
-                    facet = getFacet(itemType, XSSimpleTypeDefinition.FACET_MAXLENGTH);
-                    if(facet!=null)
-                        maxOccurs = Integer.parseInt(facet.getLexicalFacetValue());
+                    int minOccurs = Math.max(facets.minLength, 0);
+                    int maxOccurs = facets.maxLength;
 
                     if(maxOccurs==-1)
                         maxOccurs = Math.max(minOccurs, config.maximumListItemsGenerated);
@@ -402,205 +425,121 @@ public class XSInstance{
                             : randomUtil.random(min, max);
                 }
 
-                List<String> enums = XSUtil.getEnumeratedValues(itemType);
-                if(enums.isEmpty()){
+                String[] enums = value.itemType.facets.enums;
+                if(enums.length==0){
                     StringBuilder buff = new StringBuilder();
                     while(len>0){
                         buff.append(" ");
-                        buff.append(generateSampleValue(itemType, hint));
+                        buff.append(generateSampleValue(value.itemType, hint));
                         len--;
                     }
                     return buff.toString().trim();
                 }else{
-                    while(enums.size()<len)
-                        enums.addAll(new ArrayList<String>(enums));
-                    Collections.shuffle(enums);
+                    // each enum is used at most as often as needed to fill the list
+                    String[] pool = enums.clone();
+                    while(pool.length<len){
+                        pool = Arrays.copyOf(pool, pool.length*2);
+                        System.arraycopy(pool, 0, pool, pool.length/2, pool.length/2);
+                    }
+                    randomUtil.shuffle(pool, len);
 
                     StringBuilder buff = new StringBuilder();
-                    while(len>0){
+                    for(int i=0; i<len; i++){
                         buff.append(" ");
-                        buff.append(enums.remove(0));
-                        len--;
+                        buff.append(pool[i]);
                     }
                     return buff.toString().trim();
                 }
-            }else if(simpleType.getMemberTypes().getLength()>0){
-                XSObjectList members = simpleType.getMemberTypes();
-                int rand = randomUtil.random(0, members.getLength()-1);
-                return generateSampleValue((XSSimpleTypeDefinition)members.item(rand), hint);
             }
 
-            List<String> enums = XSUtil.getEnumeratedValues(simpleType);
-            if(!enums.isEmpty())
-                return enums.get(randomUtil.random(0, enums.size()-1));
+            String[] enums = facets.enums;
+            if(enums.length>0)
+                return enums[randomUtil.random(0, enums.length-1)];
 
-            XSSimpleTypeDefinition builtInType = simpleType;
-            while(!Namespaces.URI_XSD.equals(builtInType.getNamespace()))
-                builtInType = (XSSimpleTypeDefinition)builtInType.getBaseType();
+            if(value.variety==XSPlan.VARIETY_UNION){
+                XSPlan.Value[] members = value.memberTypes;
+                int rand = randomUtil.random(0, members.length-1);
+                return generateSampleValue(members[rand], hint);
+            }
 
+            if(value.patterns!=null){
+                randomUtil.startValue();
+                String sample = generatePatternValue(value);
+                randomUtil.endValue();
+                return sample;
+            }
 
-            String name = builtInType.getName().toLowerCase();
+            String name = value.builtInType;
             if("boolean".equals(name))
                 return randomUtil.randomBoolean() ? "true" : "false";
 
-            if("double".equals(name)
-                    || "decimal".equals(name)
-                    || "float".equals(name)
-                    || name.endsWith("integer")
-                    || name.endsWith("int")
-                    || name.endsWith("long")
-                    || name.endsWith("short")
-                    || name.endsWith("byte"))
-                return new Range(simpleType).randomNumber();
-
-            if("date".equals(name))
-                return new SimpleDateFormat(XSD_DATE_FORMAT).format(new Date());
-            if("time".equals(name))
-                return new SimpleDateFormat(XSD_TIME_FORMAT).format(new Date());
-            if("dateTime".equals(name)){
-                Date date = new Date();
-                return new SimpleDateFormat(XSD_DATE_FORMAT).format(date)+'T'+new SimpleDateFormat(XSD_TIME_FORMAT).format(date);
-            }else{
-                Integer count = counters.get(hint);
-                count = count==null ? 1 : ++count;
-                counters.put(hint, count);
-                String countStr = count.toString();
-                XSFacet facet = getFacet(simpleType, XSSimpleTypeDefinition.FACET_MINLENGTH);
-                if(facet!=null){
-                    int len = Integer.parseInt(facet.getLexicalFacetValue());
-                    len -= hint.length();
-                    len -= countStr.length();
-                    if(len>0){
-                        char[] ch = new char[len];
-                        Arrays.fill(ch, '_');
-                        hint += new String(ch);
-                    }
-                }
-                facet = getFacet(simpleType, XSSimpleTypeDefinition.FACET_MAXLENGTH);
-                if(facet!=null){
-                    int maxLen = Integer.parseInt(facet.getLexicalFacetValue());
-                    int len = maxLen;
-                    len = hint.length() + countStr.length() - len;
-                    if(len>0){
-                        if(hint.length()>len)
-                            hint = hint.substring(0, hint.length()-len);
-                        else{
-                            hint = hint.substring(0, maxLen);
-                            countStr = "";
-                        }
-                    }
-                }
-                return hint+countStr;
-            }
-        }
-
-        private XSFacet getFacet(XSSimpleTypeDefinition simpleType, int kind){
-            XSObjectList facets = simpleType.getFacets();
-            for(int i=0; i<facets.getLength(); i++){
-                XSFacet facet = (XSFacet)facets.item(i);
-                if(facet.getFacetKind()==kind)
-                    return facet;
-            }
-            return null;
-        }
-
-        class Range{
-            String minInclusive;
-            String minExclusive;
-            String maxInclusive;
-            String maxExclusive;
-            int totalDigits = -1;
-            int fractionDigits = -1;
-
-            Range(XSSimpleTypeDefinition simpleType){
-                XSFacet facet = getFacet(simpleType, XSSimpleTypeDefinition.FACET_MININCLUSIVE);
-                if(facet!=null)
-                    minInclusive = facet.getLexicalFacetValue();
-                facet = getFacet(simpleType, XSSimpleTypeDefinition.FACET_MINEXCLUSIVE);
-                if(facet!=null)
-                    minExclusive = facet.getLexicalFacetValue();
-
-                facet = getFacet(simpleType, XSSimpleTypeDefinition.FACET_MAXINCLUSIVE);
-                if(facet!=null)
-                    maxInclusive = facet.getLexicalFacetValue();
-                facet = getFacet(simpleType, XSSimpleTypeDefinition.FACET_MAXEXCLUSIVE);
-                if(facet!=null)
-                    maxExclusive = facet.getLexicalFacetValue();
-
-                facet = getFacet(simpleType, XSSimpleTypeDefinition.FACET_TOTALDIGITS);
-                if(facet!=null)
-                    totalDigits = Integer.parseInt(facet.getLexicalFacetValue());
-
-                facet = getFacet(simpleType, XSSimpleTypeDefinition.FACET_FRACTIONDIGITS);
-                if(facet!=null)
-                    fractionDigits = Integer.parseInt(facet.getLexicalFacetValue());
+            if(value.number!=null || value.temporal!=null){
+                randomUtil.startValue();
+                String sample = value.number!=null ? value.number.generate(randomUtil) : value.temporal.generate(randomUtil);
+                randomUtil.endValue();
+                return sample;
             }
 
-            private String applyDigits(Object obj){
-                String str = String.valueOf(obj);
-                String number, fraction;
-                int dot = str.indexOf(".");
-                if(dot==-1){
-                    number = str;
-                    fraction = "";
-                }else{
-                    number = str.substring(0, dot);
-                    fraction = str.substring(dot+1);
-                }
-                boolean negative = false;
-                if(number.startsWith("-")){
-                    negative = true;
-                    number = number.substring(1);
+            Integer count = counters.get(hint);
+            count = count==null ? 1 : ++count;
+            counters.put(hint, count);
+            String countStr = count.toString();
+            int minLength = facets.length>=0 ? facets.length : facets.minLength;
+            int maxLength = facets.length>=0 ? facets.length : facets.maxLength;
+            if(maxLength>minLength && randomUtil.fillsToMaxLength()) // as long as allowed
+                minLength = Math.max(minLength, Math.min(maxLength, MAXIMUM_FILLED_LENGTH));
+            if(minLength>=0){
+                int len = minLength;
+                len -= hint.length();
+                len -= countStr.length();
+                if(len>0){
+                    char[] ch = new char[len];
+                    Arrays.fill(ch, '_');
+                    hint += new String(ch);
                 }
-                if(totalDigits>=0){
-                    if(number.length()>totalDigits)
-                        number = number.substring(0, totalDigits);
-                }
-                if(fractionDigits>=0){
-                    if(fraction.length()>fractionDigits)
-                        fraction = fraction.substring(0, fractionDigits);
+            }
+            if(maxLength>=0){
+                int maxLen = maxLength;
+                int len = maxLen;
+                len = hint.length() + countStr.length() - len;
+                if(len>0){
+                    if(hint.length()>len)
+                        hint = hint.substring(0, hint.length()-len);
+                    else{
+                        hint = hint.substring(0, maxLen);
+                        countStr = "";
+                    }
                 }
-
-                str = negative ? "-" : "";
-                str += number;
-                if(fraction.length()>0)
-                    str += '.' + fraction;
-                return str;
             }
+            return hint+countStr;
+        }
 
-            public String randomNumber(){
-                if(fractionDigits==0){
-                    // NOTE: min/max facets can have fractional part
-                    //       even though fractionDigits is zero
-                    long min = Long.MIN_VALUE;
-                    if(minInclusive!=null)
-                        min = (long)Double.parseDouble(minInclusive);
-                    if(minExclusive!=null)
-                        min = (long)Double.parseDouble(minExclusive)+1;
-
-                    long max = Long.MAX_VALUE;
-                    if(maxInclusive!=null)
-                        max = (long)Double.parseDouble(maxInclusive);
-                    if(maxExclusive!=null)
-                        max = (long)Double.parseDouble(maxExclusive)-1;
-
-                    return applyDigits(randomUtil.random(min, max));
-                }else{
-                    double min = Double.MIN_VALUE;
-                    if(minInclusive!=null)
-                        min = Double.parseDouble(minInclusive);
-                    if(minExclusive!=null)
-                        min = Double.parseDouble(minExclusive)+1;
-
-                    double max = Double.MAX_VALUE;
-                    if(maxInclusive!=null)
-                        max = Double.parseDouble(maxInclusive);
-                    if(maxExclusive!=null)
-                        max = Double.parseDouble(maxExclusive)-1;
-
-                    return applyDigits(randomUtil.random(min, max));
+        /**
+         * generates strings matching one of the patterns in turn, until one is valid for all
+         * facets of the type, giving up after {@link #PATTERN_ATTEMPTS}; every other round of
+         * the patterns uses ascii characters only, as built-in types like integers need them
+         */
+        private String generatePatternValue(XSPlan.Value value){
+            XSFacets facets = value.facets;
+            int minLength = facets.length>=0 ? facets.length : Math.max(facets.minLength, 0);
+            int maxLength = facets.length>=0 ? facets.length : facets.maxLength>=0 ? facets.maxLength : Integer.MAX_VALUE;
+            // ID, IDREF and ENTITY values are checked against the document, not here
+            ValidationState state = new ValidationState();
+            state.setExtraChecking(false);
+            String sample = null;
+            for(int i=0; i<PATTERN_ATTEMPTS; i++){
+                boolean asciiOnly = i/value.patterns.length%2==1;
+                sample = value.patterns[i%value.patterns.length].generate(randomUtil, minLength, maxLength, asciiOnly);
+                try{
+                    ((XSSimpleType)value.simpleType).validate(sample, state, null);
+                    return sample;
+                }catch(InvalidDatatypeValueException ex){
+                    // try again
                 }
             }
+            String type = value.simpleType.getAnonymous() ? "anonymous type" : "type "+value.simpleType.getName();
+            throw new IllegalStateException("no value of "+type+" valid for its patterns and facets found in "
+                    +PATTERN_ATTEMPTS+" attempts, last: "+sample+"; bind a value provider to it");
         }
     }
 }
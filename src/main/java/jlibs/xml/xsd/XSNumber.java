@@ -0,0 +1,258 @@
+package jlibs.xml.xsd;
+
+import jlibs.core.util.RandomUtil;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Generates values of a numeric simple type which satisfy its bounds and digits exactly.
+ * <p>
+ * Integers and decimals are generated as unscaled integers between the bounds, on longs
+ * unless the bounds don't fit into them. Bounds which are not constrained by the built-in
+ * type or the facets default to those of xs:long. Instances are immutable.
+ */
+abstract class XSNumber{
+    /** fraction digits of decimals without fractionDigits facet */
+    private static final int DEFAULT_SCALE = 2;
+
+    /** most fraction digits tried to fit a decimal between close bounds */
+    private static final int MAXIMUM_SCALE = 20;
+
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    abstract String generate(RandomUtil random);
+
+    /**
+     * @param builtInType   lower-cased name of the built-in type derived from xs:decimal, xs:float or xs:double
+     */
+    static XSNumber of(String builtInType, XSFacets facets){
+        switch(builtInType){
+            case "float":
+                return new FloatRange(facets);
+            case "double":
+                return new DoubleRange(facets);
+            case "decimal":
+                int scale = facets.fractionDigits>=0 ? facets.fractionDigits : DEFAULT_SCALE;
+                if(facets.totalDigits>=0)
+                    scale = Math.min(scale, facets.totalDigits);
+                for(;; scale++){
+                    XSNumber number = integer(null, null, facets, scale);
+                    if(number!=null)
+                        return number;
+                    if(facets.fractionDigits>=0 || scale>=MAXIMUM_SCALE)
+                        return integer(null, null, facets, -1);
+                }
+            default:
+                BigInteger lower = lowerBound(builtInType);
+                BigInteger upper = upperBound(builtInType);
+                XSNumber number = integer(lower, upper, facets, 0);
+                return number!=null ? number : integer(lower, upper, facets, -1);
+        }
+    }
+
+    private static BigInteger lowerBound(String integerType){
+        switch(integerType){
+            case "byte": return BigInteger.valueOf(Byte.MIN_VALUE);
+            case "short": return BigInteger.valueOf(Short.MIN_VALUE);
+            case "int": return BigInteger.valueOf(Integer.MIN_VALUE);
+            case "long": return LONG_MIN;
+            case "unsignedbyte":
+            case "unsignedshort":
+            case "unsignedint":
+            case "unsignedlong":
+            case "nonnegativeinteger": return BigInteger.ZERO;
+            case "positiveinteger": return BigInteger.ONE;
+            default: return null;
+        }
+    }
+
+    private static BigInteger upperBound(String integerType){
+        switch(integerType){
+            case "byte": return BigInteger.valueOf(Byte.MAX_VALUE);
+            case "short": return BigInteger.valueOf(Short.MAX_VALUE);
+            case "int": return BigInteger.valueOf(Integer.MAX_VALUE);
+            case "long": return LONG_MAX;
+            case "unsignedbyte": return BigInteger.valueOf(0xFF);
+            case "unsignedshort": return BigInteger.valueOf(0xFFFF);
+            case "unsignedint": return BigInteger.valueOf(0xFFFFFFFFL);
+            case "unsignedlong": return BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+            case "nonpositiveinteger": return BigInteger.ZERO;
+            case "negativeinteger": return BigInteger.ONE.negate();
+            default: return null;
+        }
+    }
+
+    /**
+     * returns the generator of the unscaled values between the bounds of the built-in type and the facets,
+     * null if there is none with the given scale; a negative scale returns the lower bound however
+     */
+    private static XSNumber integer(BigInteger lower, BigInteger upper, XSFacets facets, int scale){
+        boolean fallback = scale<0;
+        if(fallback)
+            scale = 0;
+        if(facets.minValue!=null){
+            BigDecimal min = facets.minValue.movePointRight(scale);
+            BigInteger bound = facets.minValueExclusive
+                    ? min.setScale(0, RoundingMode.FLOOR).toBigInteger().add(BigInteger.ONE)
+                    : min.setScale(0, RoundingMode.CEILING).toBigInteger();
+            lower = lower==null ? bound : lower.max(bound);
+        }
+        if(facets.maxValue!=null){
+            BigDecimal max = facets.maxValue.movePointRight(scale);
+            BigInteger bound = facets.maxValueExclusive
+                    ? max.setScale(0, RoundingMode.CEILING).toBigInteger().subtract(BigInteger.ONE)
+                    : max.setScale(0, RoundingMode.FLOOR).toBigInteger();
+            upper = upper==null ? bound : upper.min(bound);
+        }
+        if(lower==null)
+            lower = upper==null ? LONG_MIN : LONG_MIN.min(upper.subtract(LONG_MAX));
+        if(upper==null)
+            upper = LONG_MAX.max(lower.add(LONG_MAX));
+        if(facets.totalDigits>=0){
+            BigInteger digits = BigInteger.TEN.pow(facets.totalDigits).subtract(BigInteger.ONE);
+            lower = lower.max(digits.negate());
+            upper = upper.min(digits);
+        }
+        if(lower.compareTo(upper)>0){
+            if(!fallback)
+                return null;
+            upper = lower;
+        }
+        if(lower.bitLength()<64 && upper.bitLength()<64)
+            return new LongRange(lower.longValue(), upper.longValue(), scale);
+        return new BigRange(lower, upper, scale);
+    }
+
+    /*-------------------------------------------------[ Integers and decimals ]---------------------------------------------------*/
+
+    private static final class LongRange extends XSNumber{
+        private final long min, max;
+        private final int scale;
+
+        LongRange(long min, long max, int scale){
+            this.min = min;
+            this.max = max;
+            this.scale = scale;
+        }
+
+        @Override
+        String generate(RandomUtil random){
+            long value = random.random(min, max);
+            return scale==0 ? Long.toString(value) : format(value, scale);
+        }
+
+        /** formats the decimal with the given unscaled value, keeping its trailing zeros */
+        private static String format(long unscaled, int scale){
+            char[] buff = new char[22+scale];
+            int pos = buff.length;
+            boolean negative = unscaled<0;
+            long value = negative ? unscaled : -unscaled; // negative, so that Long.MIN_VALUE works too
+            for(int i=0; i<scale; i++){
+                buff[--pos] = (char)('0'-value%10);
+                value /= 10;
+            }
+            buff[--pos] = '.';
+            do{
+                buff[--pos] = (char)('0'-value%10);
+                value /= 10;
+            }while(value!=0);
+            if(negative)
+                buff[--pos] = '-';
+            return new String(buff, pos, buff.length-pos);
+        }
+    }
+
+    private static final class BigRange extends XSNumber{
+        /** number of random bits used for spans beyond longs */
+        private static final int PRECISION = 62;
+
+        private final BigInteger min;
+        private final BigInteger span;
+        private final int scale;
+
+        BigRange(BigInteger min, BigInteger max, int scale){
+            this.min = min;
+            span = max.subtract(min);
+            this.scale = scale;
+        }
+
+        @Override
+        String generate(RandomUtil random){
+            BigInteger offset;
+            if(span.bitLength()<64)
+                offset = BigInteger.valueOf(random.random(0, span.longValue()));
+            else
+                offset = span.multiply(BigInteger.valueOf(random.random(0, 1L<<PRECISION))).shiftRight(PRECISION);
+            BigInteger value = min.add(offset);
+            return scale==0 ? value.toString() : new BigDecimal(value, scale).toPlainString();
+        }
+    }
+
+    /*-------------------------------------------------[ Floating point ]---------------------------------------------------*/
+
+    // the facets of floats and doubles are values of the type, so an exclusive bound excludes its rounded value
+
+    private static final class DoubleRange extends XSNumber{
+        private final double min, max;
+
+        DoubleRange(XSFacets facets){
+            double min = -Double.MAX_VALUE;
+            if(facets.minValue!=null){
+                min = Math.max(min, Math.min(facets.minValue.doubleValue(), Double.MAX_VALUE));
+                if(facets.minValueExclusive)
+                    min = Math.nextUp(min);
+            }
+            double max = Double.MAX_VALUE;
+            if(facets.maxValue!=null){
+                max = Math.min(max, Math.max(facets.maxValue.doubleValue(), -Double.MAX_VALUE));
+                if(facets.maxValueExclusive)
+                    max = Math.nextDown(max);
+            }
+            this.min = min;
+            this.max = Math.max(min, max);
+        }
+
+        @Override
+        String generate(RandomUtil random){
+            return Double.toString(random(random, min, max));
+        }
+    }
+
+    private static final class FloatRange extends XSNumber{
+        private final float min, max;
+
+        FloatRange(XSFacets facets){
+            float min = -Float.MAX_VALUE;
+            if(facets.minValue!=null){
+                min = Math.max(min, Math.min(facets.minValue.floatValue(), Float.MAX_VALUE));
+                if(facets.minValueExclusive)
+                    min = Math.nextUp(min);
+            }
+            float max = Float.MAX_VALUE;
+            if(facets.maxValue!=null){
+                max = Math.min(max, Math.max(facets.maxValue.floatValue(), -Float.MAX_VALUE));
+                if(facets.maxValueExclusive)
+                    max = Math.nextDown(max);
+            }
+            this.min = min;
+            this.max = Math.max(min, max);
+        }
+
+        @Override
+        String generate(RandomUtil random){
+            float value = (float)random(random, min, max);
+            return Float.toString(Math.max(min, Math.min(max, value)));
+        }
+    }
+
+    /** random double between the finite bounds, whose difference may overflow */
+    private static double random(RandomUtil random, double min, double max){
+        double value = max-min<=Double.MAX_VALUE
+                ? random.random(min, max)
+                : random.random(min/2, max/2)*2;
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,606 @@
+package jlibs.xml.xsd;
+
+import jlibs.core.util.RandomUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generates strings matching an XML Schema regular expression, as used by the pattern facet.
+ * <p>
+ * The expression is compiled once into a tree of alternatives, sequences, repetitions and
+ * character sets, which generates a string in time linear to its length. Unbounded
+ * repetitions are limited to {@link #UNBOUNDED_REPEAT} more than their minimum, unless
+ * a longer string is asked for.
+ * Characters are drawn from printable ascii where the set allows, and from the rest
+ * of the set otherwise, within the basic multilingual plane unless the set has none there.
+ * <p>
+ * {@code \i} and {@code \c} are approximated by unicode categories, so that generated
+ * names may occasionally be rejected by a validator.
+ */
+public final class XSPattern{
+    public static final int UNBOUNDED_REPEAT = 4;
+
+    private final String regex;
+    private final Node root;
+
+    private XSPattern(String regex, Node root){
+        this.regex = regex;
+        this.root = root;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the regex is invalid or uses unsupported unicode blocks
+     */
+    public static XSPattern compile(String regex){
+        return new XSPattern(regex, new Parser(regex).parse());
+    }
+
+    public String generate(RandomUtil random){
+        return generate(random, 0, Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * Generates a string whose repetitions continue while it is shorter than minLength, as far as
+     * the pattern allows, and stop once it has maxLength, unless the pattern requires more.
+     * Repetitions early in the pattern fill the minLength first, so the string may still be
+     * too short or too long. If asciiOnly is true, characters are drawn from printable ascii only,
+     * unless the set has none.
+     */
+    public String generate(RandomUtil random, int minLength, int maxLength, boolean asciiOnly){
+        StringBuilder buff = new StringBuilder();
+        root.generate(random, buff, minLength, maxLength, asciiOnly);
+        return buff.toString();
+    }
+
+    @Override
+    public String toString(){
+        return regex;
+    }
+
+    /*-------------------------------------------------[ Nodes ]---------------------------------------------------*/
+
+    private interface Node{
+        void generate(RandomUtil random, StringBuilder buff, int minLength, int maxLength, boolean asciiOnly);
+    }
+
+    private static final class Alternatives implements Node{
+        private final Node[] branches;
+
+        Alternatives(Node[] branches){
+            this.branches = branches;
+        }
+
+        @Override
+        public void generate(RandomUtil random, StringBuilder buff, int minLength, int maxLength, boolean asciiOnly){
+            branches[random.randomIndex(branches.length)].generate(random, buff, minLength, maxLength, asciiOnly);
+        }
+    }
+
+    private static final class Sequence implements Node{
+        private final Node[] pieces;
+
+        Sequence(Node[] pieces){
+            this.pieces = pieces;
+        }
+
+        @Override
+        public void generate(RandomUtil random, StringBuilder buff, int minLength, int maxLength, boolean asciiOnly){
+            for(Node piece: pieces)
+                piece.generate(random, buff, minLength, maxLength, asciiOnly);
+        }
+    }
+
+    private static final class Repeat implements Node{
+        private final Node atom;
+        private final int min, max;
+        private final boolean unbounded;
+
+        Repeat(Node atom, int min, int max, boolean unbounded){
+            this.atom = atom;
+            this.min = min;
+            this.max = max;
+            this.unbounded = unbounded;
+        }
+
+        @Override
+        public void generate(RandomUtil random, StringBuilder buff, int minLength, int maxLength, boolean asciiOnly){
+            int count = min==max ? min : random.random(min, max);
+            int limit = unbounded ? Integer.MAX_VALUE : max;
+            for(int i=0; i<limit && (i<count || buff.length()<minLength) && (i<min || buff.length()<maxLength); i++){
+                int length = buff.length();
+                atom.generate(random, buff, minLength, maxLength, asciiOnly);
+                if(i>=count && buff.length()==length) // the atom can be empty, it won't get longer
+                    break;
+            }
+        }
+    }
+
+    private static final class Chars implements Node{
+        private final int[] ascii, other;
+        private final int asciiSize, otherSize;
+
+        Chars(int[] set){
+            ascii = CharSet.intersect(set, CharSet.PRINTABLE_ASCII);
+            int[] other = CharSet.subtract(set, CharSet.PRINTABLE_ASCII);
+            // validators may know older unicode versions, whose assignments are mostly in the bmp
+            int[] bmp = CharSet.intersect(other, CharSet.BMP);
+            this.other = CharSet.size(bmp)>0 ? bmp : other;
+            asciiSize = CharSet.size(ascii);
+            otherSize = CharSet.size(this.other);
+            if(asciiSize+otherSize==0)
+                throw new IllegalArgumentException("empty character class");
+        }
+
+        @Override
+        public void generate(RandomUtil random, StringBuilder buff, int minLength, int maxLength, boolean asciiOnly){
+            if(asciiSize+otherSize==1)
+                buff.appendCodePoint(asciiSize==1 ? ascii[0] : other[0]);
+            else if(asciiSize>0 && (otherSize==0 || asciiOnly || random.randomIndex(8)<7))
+                buff.appendCodePoint(CharSet.get(ascii, random.randomIndex(asciiSize)));
+            else
+                buff.appendCodePoint(CharSet.get(other, random.randomIndex(otherSize)));
+        }
+    }
+
+    /*-------------------------------------------------[ Parser ]---------------------------------------------------*/
+
+    private static final class Parser{
+        private final String regex;
+        private int pos;
+
+        Parser(String regex){
+            this.regex = regex;
+        }
+
+        Node parse(){
+            Node node = regExp();
+            if(pos<regex.length())
+                throw error("unexpected '"+regex.charAt(pos)+"'");
+            return node;
+        }
+
+        private IllegalArgumentException error(String message){
+            return new IllegalArgumentException(message+" at "+pos+" in pattern: "+regex);
+        }
+
+        private boolean more(){
+            return pos<regex.length();
+        }
+
+        private int peek(){
+            return regex.codePointAt(pos);
+        }
+
+        private boolean peek(String str){
+            return regex.startsWith(str, pos);
+        }
+
+        private int next(){
+            if(!more())
+                throw error("unexpected end");
+            int cp = regex.codePointAt(pos);
+            pos += Character.charCount(cp);
+            return cp;
+        }
+
+        private void expect(char ch){
+            if(!more() || regex.charAt(pos)!=ch)
+                throw error("expected '"+ch+"'");
+            pos++;
+        }
+
+        // regExp ::= branch ( '|' branch )*
+        private Node regExp(){
+            List<Node> branches = new ArrayList<Node>();
+            branches.add(branch());
+            while(more() && peek()=='|'){
+                pos++;
+                branches.add(branch());
+            }
+            return branches.size()==1 ? branches.get(0) : new Alternatives(branches.toArray(new Node[0]));
+        }
+
+        // branch ::= piece*
+        private Node branch(){
+            List<Node> pieces = new ArrayList<Node>();
+            while(more() && peek()!='|' && peek()!=')')
+                pieces.add(piece());
+            return pieces.size()==1 ? pieces.get(0) : new Sequence(pieces.toArray(new Node[0]));
+        }
+
+        // piece ::= atom quantifier?
+        private Node piece(){
+            Node atom = atom();
+            if(!more())
+                return atom;
+            switch(peek()){
+                case '?':
+                    pos++;
+                    return new Repeat(atom, 0, 1, false);
+                case '*':
+                    pos++;
+                    return new Repeat(atom, 0, UNBOUNDED_REPEAT, true);
+                case '+':
+                    pos++;
+                    return new Repeat(atom, 1, 1+UNBOUNDED_REPEAT, true);
+                case '{':
+                    pos++;
+                    int min = number();
+                    int max = min;
+                    boolean unbounded = false;
+                    if(more() && peek()==','){
+                        pos++;
+                        unbounded = more() && peek()=='}';
+                        max = unbounded ? min+UNBOUNDED_REPEAT : number();
+                    }
+                    expect('}');
+                    if(max<min)
+                        throw error("invalid quantifier");
+                    return new Repeat(atom, min, max, unbounded);
+                default:
+                    return atom;
+            }
+        }
+
+        private int number(){
+            int start = pos;
+            while(more() && peek()>='0' && peek()<='9')
+                pos++;
+            if(start==pos)
+                throw error("expected number");
+            return Integer.parseInt(regex.substring(start, pos));
+        }
+
+        // atom ::= NormalChar | charClass | '(' regExp ')'
+        private Node atom(){
+            int cp = next();
+            switch(cp){
+                case '(':
+                    Node node = regExp();
+                    expect(')');
+                    return node;
+                case '[':
+                    return new Chars(charClassExpr());
+                case '.':
+                    return new Chars(CharSet.complement(new int[]{ '\n', '\n', '\r', '\r' }));
+                case '\\':
+                    return new Chars(escape());
+                case '?': case '*': case '+': case '{': case ')': case '|':
+                    pos--;
+                    throw error("unexpected '"+(char)cp+"'");
+                default:
+                    return new Chars(CharSet.of(cp, cp));
+            }
+        }
+
+        // charClassExpr ::= '[' '^'? charRange+ ( '-' charClassExpr )? ']', after the '['
+        private int[] charClassExpr(){
+            boolean negative = more() && peek()=='^';
+            if(negative)
+                pos++;
+            List<int[]> sets = new ArrayList<int[]>();
+            int[] subtraction = null;
+            boolean first = true;
+            while(true){
+                if(!more())
+                    throw error("unterminated character class");
+                int cp = peek();
+                if(cp==']' && !first){
+                    pos++;
+                    break;
+                }
+                if(cp=='-' && peek("-[")){
+                    pos += 2;
+                    subtraction = charClassExpr();
+                    expect(']');
+                    break;
+                }
+                first = false;
+                int from;
+                if(cp=='\\'){
+                    pos++;
+                    int[] set = escape();
+                    if(!CharSet.isSingle(set) || !isRangeStart()){
+                        sets.add(set);
+                        continue;
+                    }
+                    from = set[0];
+                }else if(cp=='['){
+                    throw error("unexpected '['");
+                }else
+                    from = next();
+
+                if(isRangeStart()){
+                    pos++;
+                    int to = next();
+                    if(to=='\\'){
+                        int[] set = escape();
+                        if(!CharSet.isSingle(set))
+                            throw error("invalid range");
+                        to = set[0];
+                    }
+                    if(to<from)
+                        throw error("invalid range");
+                    sets.add(CharSet.of(from, to));
+                }else
+                    sets.add(CharSet.of(from, from));
+            }
+            int[] set = CharSet.union(sets);
+            if(negative)
+                set = CharSet.complement(set);
+            if(subtraction!=null)
+                set = CharSet.subtract(set, subtraction);
+            return set;
+        }
+
+        /** a '-' following a range start, which is not the end of the group or a subtraction */
+        private boolean isRangeStart(){
+            return more() && peek()=='-' && pos+1<regex.length() && regex.charAt(pos+1)!=']' && regex.charAt(pos+1)!='[';
+        }
+
+        // charClassEsc, after the '\'
+        private int[] escape(){
+            int cp = next();
+            switch(cp){
+                case 'n': return CharSet.of('\n', '\n');
+                case 'r': return CharSet.of('\r', '\r');
+                case 't': return CharSet.of('\t', '\t');
+                case '\\': case '|': case '.': case '?': case '*': case '+': case '(': case ')':
+                case '{': case '}': case '-': case '[': case ']': case '^':
+                    return CharSet.of(cp, cp);
+                case 's': return CharSet.SPACE;
+                case 'S': return CharSet.complement(CharSet.SPACE);
+                case 'i': return CharSet.initialNameChars();
+                case 'I': return CharSet.complement(CharSet.initialNameChars());
+                case 'c': return CharSet.nameChars();
+                case 'C': return CharSet.complement(CharSet.nameChars());
+                case 'd': return CharSet.DIGITS;
+                case 'D': return CharSet.complement(CharSet.category("Nd"));
+                case 'w': return CharSet.wordChars();
+                case 'W': return CharSet.complement(CharSet.wordChars());
+                case 'p':
+                case 'P':
+                    expect('{');
+                    int end = regex.indexOf('}', pos);
+                    if(end==-1)
+                        throw error("unterminated category");
+                    String name = regex.substring(pos, end);
+                    pos = end+1;
+                    int[] set;
+                    if(name.startsWith("Is")){
+                        try{
+                            set = CharSet.block(name.substring(2));
+                        }catch(IllegalArgumentException ex){
+                            throw error("unknown block "+name);
+                        }
+                    }else
+                        set = CharSet.category(name);
+                    if(set==null)
+                        throw error("unknown category "+name);
+                    return cp=='p' ? set : CharSet.complement(set);
+                default:
+                    pos -= Character.charCount(cp);
+                    throw error("invalid escape");
+            }
+        }
+    }
+
+    /*-------------------------------------------------[ CharSet ]---------------------------------------------------*/
+
+    /**
+     * Character sets as sorted, non-overlapping, non-adjacent inclusive code point ranges
+     * {@code [from0, to0, from1, to1, ...]}, limited to characters allowed in xml.
+     */
+    static final class CharSet{
+        static final int[] XML_CHARS = { 0x9, 0xA, 0xD, 0xD, 0x20, 0xD7FF, 0xE000, 0xFFFD, 0x10000, 0x10FFFF };
+        static final int[] PRINTABLE_ASCII = { 0x21, 0x7E };
+        static final int[] BMP = { 0x0, 0xFFFF };
+        static final int[] SPACE = { 0x9, 0xA, 0xD, 0xD, 0x20, 0x20 };
+
+        /**
+         * the digits of the Digit production of XML 1.0, which some validators use for {@code \d},
+         * a subset of the unicode category Nd that all of them accept
+         */
+        static final int[] DIGITS = {
+            0x0030, 0x0039, 0x0660, 0x0669, 0x06F0, 0x06F9, 0x0966, 0x096F, 0x09E6, 0x09EF,
+            0x0A66, 0x0A6F, 0x0AE6, 0x0AEF, 0x0B66, 0x0B6F, 0x0BE7, 0x0BEF, 0x0C66, 0x0C6F,
+            0x0CE6, 0x0CEF, 0x0D66, 0x0D6F, 0x0E50, 0x0E59, 0x0ED0, 0x0ED9, 0x0F20, 0x0F29
+        };
+
+        static int[] of(int from, int to){
+            return intersect(new int[]{ from, to }, XML_CHARS);
+        }
+
+        static boolean isSingle(int[] set){
+            return set.length==2 && set[0]==set[1];
+        }
+
+        static int size(int[] set){
+            int size = 0;
+            for(int i=0; i<set.length; i+=2)
+                size += set[i+1]-set[i]+1;
+            return size;
+        }
+
+        /** the index-th character of the set */
+        static int get(int[] set, int index){
+            for(int i=0; i<set.length; i+=2){
+                int size = set[i+1]-set[i]+1;
+                if(index<size)
+                    return set[i]+index;
+                index -= size;
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        static int[] union(List<int[]> sets){
+            int count = 0;
+            for(int[] set: sets)
+                count += set.length/2;
+            long[] ranges = new long[count];
+            int r = 0;
+            for(int[] set: sets){
+                for(int i=0; i<set.length; i+=2)
+                    ranges[r++] = (long)set[i]<<32 | set[i+1];
+            }
+            Arrays.sort(ranges);
+            int[] result = new int[count*2];
+            int size = 0;
+            for(long range: ranges){
+                int from = (int)(range>>>32), to = (int)range;
+                if(size>0 && from<=result[size-1]+1)
+                    result[size-1] = Math.max(result[size-1], to);
+                else{
+                    result[size++] = from;
+                    result[size++] = to;
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        static int[] intersect(int[] a, int[] b){
+            int[] result = new int[a.length+b.length];
+            int size = 0;
+            for(int i=0, j=0; i<a.length && j<b.length; ){
+                int from = Math.max(a[i], b[j]);
+                int to = Math.min(a[i+1], b[j+1]);
+                if(from<=to){
+                    result[size++] = from;
+                    result[size++] = to;
+                }
+                if(a[i+1]<b[j+1])
+                    i += 2;
+                else
+                    j += 2;
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        static int[] complement(int[] set){
+            int[] result = new int[set.length+2];
+            int size = 0;
+            int from = 0;
+            for(int i=0; i<set.length; i+=2){
+                if(set[i]>from){
+                    result[size++] = from;
+                    result[size++] = set[i]-1;
+                }
+                from = set[i+1]+1;
+            }
+            if(from<=Character.MAX_CODE_POINT){
+                result[size++] = from;
+                result[size++] = Character.MAX_CODE_POINT;
+            }
+            return intersect(Arrays.copyOf(result, size), XML_CHARS);
+        }
+
+        static int[] subtract(int[] a, int[] b){
+            return intersect(a, complement(b));
+        }
+
+        /*-------------------------------------------------[ Unicode ]---------------------------------------------------*/
+
+        private static final String[] CATEGORY_NAMES = new String[Byte.MAX_VALUE];
+        static{
+            CATEGORY_NAMES[Character.UPPERCASE_LETTER] = "Lu";
+            CATEGORY_NAMES[Character.LOWERCASE_LETTER] = "Ll";
+            CATEGORY_NAMES[Character.TITLECASE_LETTER] = "Lt";
+            CATEGORY_NAMES[Character.MODIFIER_LETTER] = "Lm";
+            CATEGORY_NAMES[Character.OTHER_LETTER] = "Lo";
+            CATEGORY_NAMES[Character.NON_SPACING_MARK] = "Mn";
+            CATEGORY_NAMES[Character.COMBINING_SPACING_MARK] = "Mc";
+            CATEGORY_NAMES[Character.ENCLOSING_MARK] = "Me";
+            CATEGORY_NAMES[Character.DECIMAL_DIGIT_NUMBER] = "Nd";
+            CATEGORY_NAMES[Character.LETTER_NUMBER] = "Nl";
+            CATEGORY_NAMES[Character.OTHER_NUMBER] = "No";
+            CATEGORY_NAMES[Character.CONNECTOR_PUNCTUATION] = "Pc";
+            CATEGORY_NAMES[Character.DASH_PUNCTUATION] = "Pd";
+            CATEGORY_NAMES[Character.START_PUNCTUATION] = "Ps";
+            CATEGORY_NAMES[Character.END_PUNCTUATION] = "Pe";
+            CATEGORY_NAMES[Character.INITIAL_QUOTE_PUNCTUATION] = "Pi";
+            CATEGORY_NAMES[Character.FINAL_QUOTE_PUNCTUATION] = "Pf";
+            CATEGORY_NAMES[Character.OTHER_PUNCTUATION] = "Po";
+            CATEGORY_NAMES[Character.SPACE_SEPARATOR] = "Zs";
+            CATEGORY_NAMES[Character.LINE_SEPARATOR] = "Zl";
+            CATEGORY_NAMES[Character.PARAGRAPH_SEPARATOR] = "Zp";
+            CATEGORY_NAMES[Character.MATH_SYMBOL] = "Sm";
+            CATEGORY_NAMES[Character.CURRENCY_SYMBOL] = "Sc";
+            CATEGORY_NAMES[Character.MODIFIER_SYMBOL] = "Sk";
+            CATEGORY_NAMES[Character.OTHER_SYMBOL] = "So";
+            CATEGORY_NAMES[Character.CONTROL] = "Cc";
+            CATEGORY_NAMES[Character.FORMAT] = "Cf";
+            CATEGORY_NAMES[Character.PRIVATE_USE] = "Co";
+            CATEGORY_NAMES[Character.UNASSIGNED] = "Cn";
+        }
+
+        /** ranges of the two letter categories, computed once by scanning all code points */
+        private static volatile Map<String, int[]> categories;
+
+        private static Map<String, int[]> categories(){
+            Map<String, int[]> result = categories;
+            if(result==null){
+                Map<String, List<int[]>> ranges = new ConcurrentHashMap<String, List<int[]>>();
+                int from = 0;
+                int type = Character.getType(0);
+                for(int cp=1; cp<=Character.MAX_CODE_POINT+1; cp++){
+                    int cpType = cp>Character.MAX_CODE_POINT ? -1 : Character.getType(cp);
+                    if(cpType!=type){
+                        String name = CATEGORY_NAMES[type];
+                        if(name!=null)
+                            ranges.computeIfAbsent(name, k -> new ArrayList<int[]>()).add(new int[]{ from, cp-1 });
+                        from = cp;
+                        type = cpType;
+                    }
+                }
+                result = new ConcurrentHashMap<String, int[]>();
+                for(Map.Entry<String, List<int[]>> entry: ranges.entrySet()){
+                    String name = entry.getKey();
+                    int[] set = intersect(union(entry.getValue()), XML_CHARS);
+                    result.put(name, set);
+                    result.merge(name.substring(0, 1), set, (a, b) -> union(Arrays.asList(a, b)));
+                }
+                categories = result;
+            }
+            return result;
+        }
+
+        /** a one or two letter unicode category, or null if unknown */
+        static int[] category(String name){
+            return categories().get(name);
+        }
+
+        private static final Map<String, int[]> blocks = new ConcurrentHashMap<String, int[]>();
+
+        /**
+         * @throws IllegalArgumentException if the block is not known
+         */
+        static int[] block(String name){
+            Character.UnicodeBlock block = Character.UnicodeBlock.forName(name);
+            return blocks.computeIfAbsent(name, k -> {
+                List<int[]> ranges = new ArrayList<int[]>();
+                for(int cp=0; cp<=Character.MAX_CODE_POINT; cp++){
+                    if(Character.UnicodeBlock.of(cp)==block)
+                        ranges.add(new int[]{ cp, cp });
+                }
+                return intersect(union(ranges), XML_CHARS);
+            });
+        }
+
+        static int[] initialNameChars(){
+            return union(Arrays.asList(category("L"), category("Nl"), new int[]{ ':', ':', '_', '_' }));
+        }
+
+        static int[] nameChars(){
+            return union(Arrays.asList(initialNameChars(), category("Nd"), category("Mn"), category("Mc"),
+                    new int[]{ '-', '.', 0xB7, 0xB7 }));
+        }
+
+        static int[] wordChars(){
+            return subtract(XML_CHARS, union(Arrays.asList(category("P"), category("Z"), category("C"))));
+        }
+    }
+}
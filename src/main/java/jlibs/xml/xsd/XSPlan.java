@@ -0,0 +1,616 @@
+package jlibs.xml.xsd;
+
+import jlibs.xml.Namespaces;
+import org.apache.xerces.xs.*;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled form of the part of a {@link XSModel} which is reachable from one root element.
+ * <p>
+ * All facts which don't depend on randomness (occurrence ranges, substitution groups,
+ * concrete subtypes, enumerations, content model comments, bound value providers, ...) are resolved once
+ * while compiling, so that {@link XSInstance#generate(XSPlan, jlibs.xml.sax.XMLDocument)}
+ * only has to follow the node tables.
+ * <p>
+ * The plan also knows the minimal content of every node, counted in elements and approximate bytes,
+ * which the generator uses to stay within the budgets of the config without leaving out required content.
+ * <p>
+ * A plan is immutable and can be shared between threads. It keeps a reference to the
+ * {@link XSConfig} it was compiled with, which must not be modified afterwards.
+ */
+public final class XSPlan{
+    static final int VARIETY_ATOMIC = 0;
+    static final int VARIETY_LIST = 1;
+    static final int VARIETY_UNION = 2;
+
+    /** cost of content which can't be generated, e.g. an abstract element without concrete substitutes */
+    static final long INFINITE = Long.MAX_VALUE/2;
+
+    /** approximate bytes of an element with the given name, without its content */
+    static int tagSize(String name){
+        return 2*name.length()+5;
+    }
+
+    /** approximate bytes of an attribute with the given name and value */
+    static int attributeSize(String name, String value){
+        return name.length()+value.length()+4;
+    }
+
+    static long add(long a, long b){
+        return Math.min(a+b, INFINITE);
+    }
+
+    static long multiply(long a, int times){
+        return times==0 ? 0 : a>INFINITE/times ? INFINITE : a*times;
+    }
+
+    final XSModel xsModel;
+    final XSConfig config;
+    final QName rootElement;
+    final Particle root;
+    final Element[] elements;
+
+    /** prefixes of the qualified names, to be declared on the root element */
+    final String[] prefixes;
+    final String[] namespaces;
+
+    /** qualified name of xsi:type */
+    final String xsiType;
+
+    private XSPlan(XSModel xsModel, XSConfig config, QName rootElement, Particle root, Element[] elements, Map<String, String> prefixes, String xsiType){
+        this.xsModel = xsModel;
+        this.config = config;
+        this.rootElement = rootElement;
+        this.root = root;
+        this.elements = elements;
+        this.namespaces = prefixes.keySet().toArray(new String[0]);
+        this.prefixes = prefixes.values().toArray(new String[0]);
+        this.xsiType = xsiType;
+    }
+
+    public XSModel getModel(){
+        return xsModel;
+    }
+
+    public XSConfig getConfig(){
+        return config;
+    }
+
+    public QName getRootElement(){
+        return rootElement;
+    }
+
+    public static XSPlan compile(XSModel xsModel, QName rootElement, XSConfig config){
+        return compile(xsModel, new XSIndex(xsModel), rootElement, config);
+    }
+
+    /**
+     * Compiles the plan using the given index of the model, which can be shared by all plans of the model.
+     */
+    public static XSPlan compile(XSModel xsModel, XSIndex index, QName rootElement, XSConfig config){
+        XSElementDeclaration root = xsModel.getElementDeclaration(rootElement.getLocalPart(), rootElement.getNamespaceURI());
+        if(root==null)
+            throw new IllegalArgumentException("Element "+rootElement+" is not found");
+        return new Compiler(xsModel, index, rootElement, config).compile(root);
+    }
+
+    /*-------------------------------------------------[ Nodes ]---------------------------------------------------*/
+
+    /** minimal number of elements, and approximate bytes, of valid content */
+    static class Cost{
+        long minElements = INFINITE;
+        long minSize = INFINITE;
+
+        /** true if the minimal content of this is smaller than that of the given one */
+        boolean cheaper(Cost that){
+            return minElements<that.minElements || (minElements==that.minElements && minSize<that.minSize);
+        }
+
+        /** updates the cost to the given one, returning whether it changed */
+        boolean update(long minElements, long minSize){
+            if(minElements==this.minElements && minSize==this.minSize)
+                return false;
+            this.minElements = minElements;
+            this.minSize = minSize;
+            return true;
+        }
+    }
+
+    /** the minimal cost of a particle is that of its minOccurs repetitions, or choices */
+    static final class Particle extends Cost{
+        /** true for minOccurs=0 and maxOccurs=1 */
+        boolean optional;
+        int minRepeat, maxRepeat;
+
+        /** minOccurs of the schema, all that is generated when only required content is */
+        int minOccurs;
+
+        /**
+         * non-null if the term is a choice, in that case choiceCount of its particles are generated,
+         * and minOccurs of them when only required content is generated
+         */
+        Group choice;
+        int choiceCount;
+
+        Element element;
+        Group group;
+        Wildcard wildcard;
+
+        /** cost of one repetition of the element, group or wildcard */
+        long termElements = INFINITE;
+        long termSize = INFINITE;
+    }
+
+    static final class Group extends Cost{
+        boolean all;
+        Particle[] particles;
+    }
+
+    /** the minimal cost of an element includes the element itself */
+    static final class Element extends Cost{
+        final int id;
+        final String namespace;
+        final String name;
+        String qName;
+
+        /** concrete members of the substitution group, non-null only for abstract elements */
+        Element[] substitutes;
+
+        /** concrete types to choose from, more than one only if the declared type is abstract */
+        Type[] types;
+        boolean xsiType;
+        String contentModel;
+
+        /** generator of the simple content bound to the declaration, null if none is */
+        XSValueProvider provider;
+
+        Element(int id, XSElementDeclaration decl){
+            this.id = id;
+            namespace = decl.getNamespace()==null ? "" : decl.getNamespace();
+            name = decl.getName();
+        }
+
+        /** approximate bytes of the element without its content, including its content model comment */
+        int size(){
+            return contentModel==null ? tagSize(qName) : tagSize(qName)+contentModel.length()+7;
+        }
+    }
+
+    /** the minimal cost of a type is that of its required attributes and content */
+    static final class Type extends Cost{
+        final String namespace;
+        final String name;
+
+        /** the value of xsi:type, null unless the type is a subtype of an abstract one */
+        String qName;
+
+        Value value;
+        Attribute[] attributes;
+        Wildcard attributeWildcard;
+        Particle particle;
+
+        Type(XSTypeDefinition type){
+            namespace = type.getNamespace();
+            name = type.getName();
+        }
+    }
+
+    static final class Attribute{
+        final String namespace;
+        final String name;
+        String qName;
+        final short constraintType;
+        final String constraintValue;
+        final boolean required;
+        Value value;
+
+        /** generator bound to the declaration, null if none is */
+        XSValueProvider provider;
+
+        Attribute(XSAttributeUse attr){
+            XSAttributeDeclaration decl = attr.getAttrDeclaration();
+            namespace = decl.getNamespace()==null ? "" : decl.getNamespace();
+            name = decl.getName();
+            constraintType = attr.getConstraintType();
+            constraintValue = attr.getConstraintValue();
+            required = attr.getRequired();
+        }
+    }
+
+    static final class Wildcard{
+        /** namespaces to choose from */
+        final String[] namespaces;
+
+        Wildcard(XSWildcard wildcard){
+            switch(wildcard.getConstraintType()){
+                case XSWildcard.NSCONSTRAINT_LIST:
+                    StringList list = wildcard.getNsConstraintList();
+                    namespaces = new String[list.getLength()];
+                    for(int i=0; i<namespaces.length; i++){
+                        String uri = list.item(i);
+                        namespaces[i] = uri==null ? "" : uri; // <xs:any namespace="##local"/> returns nsConstraintList with null
+                    }
+                    break;
+                case XSWildcard.NSCONSTRAINT_NOT:
+                    list = wildcard.getNsConstraintList();
+                    String uri = "anyNS";
+                    if(list.contains(uri)){
+                        for(int i=1;;i++){
+                            if(!list.contains(uri+i)){
+                                uri += i;
+                                break;
+                            }
+                        }
+                    }
+                    namespaces = new String[]{ uri };
+                    break;
+                default:
+                    namespaces = new String[]{ "anyNS" };
+            }
+        }
+    }
+
+    static final class Value{
+        final XSSimpleTypeDefinition simpleType;
+        final int variety;
+        Value itemType;
+        Value[] memberTypes;
+        XSFacets facets;
+
+        /** lower-cased name of the built-in type this type is derived from */
+        String builtInType;
+
+        /** true if the built-in type is derived from xs:decimal, xs:float or xs:double */
+        boolean numeric;
+        XSNumber number;
+
+        /** generator of dates, times and durations, null for other types */
+        XSTemporal temporal;
+
+        /** pattern facets not inherited from the built-in type, null if none is supported */
+        XSPattern[] patterns;
+
+        /** generator bound to the type or one of its base types, null if none is or the type has enumerations */
+        XSValueProvider provider;
+
+        Value(XSSimpleTypeDefinition simpleType){
+            this.simpleType = simpleType;
+            if(simpleType.getBuiltInKind()==XSConstants.LIST_DT)
+                variety = VARIETY_LIST;
+            else if(simpleType.getMemberTypes().getLength()>0)
+                variety = VARIETY_UNION;
+            else
+                variety = VARIETY_ATOMIC;
+        }
+    }
+
+    /*-------------------------------------------------[ Compiler ]---------------------------------------------------*/
+
+    private static class Compiler{
+        private final XSModel xsModel;
+        private final XSIndex index;
+        private final QName rootElement;
+        private final XSConfig config;
+
+        private final Map<XSElementDeclaration, Element> elements = new IdentityHashMap<XSElementDeclaration, Element>();
+        private final List<Element> elementTable = new ArrayList<Element>();
+        private final List<Particle> particleTable = new ArrayList<Particle>();
+        private final Map<XSTypeDefinition, Type> types = new IdentityHashMap<XSTypeDefinition, Type>();
+        private final Map<XSModelGroup, Group> groups = new IdentityHashMap<XSModelGroup, Group>();
+        private final Map<XSSimpleTypeDefinition, Value> values = new IdentityHashMap<XSSimpleTypeDefinition, Value>();
+
+        /** prefixes by namespace of the qualified names compiled */
+        private final Map<String, String> prefixes = new LinkedHashMap<String, String>();
+        private final String xsiType;
+
+        private Compiler(XSModel xsModel, XSIndex index, QName rootElement, XSConfig config){
+            this.xsModel = xsModel;
+            this.index = index;
+            this.rootElement = rootElement;
+            this.config = config;
+
+            xsiType = qName(Namespaces.URI_XSI, "type");
+            String uri = rootElement.getNamespaceURI(), prefix = rootElement.getPrefix();
+            if(!uri.isEmpty() && !prefix.isEmpty()){
+                String boundURI = index.getNamespaceURI(prefix);
+                if(boundURI==null || boundURI.equals(uri))
+                    prefixes.put(uri, prefix);
+            }
+        }
+
+        /**
+         * Returns the qualified name of the given name, with the prefix of its namespace in the index,
+         * or that of the root element. The default namespace is never used, so that names without
+         * namespace don't need to undeclare it.
+         */
+        private String qName(String uri, String name){
+            if(uri==null || uri.isEmpty())
+                return name;
+            String prefix = prefixes.get(uri);
+            if(prefix==null)
+                prefixes.put(uri, prefix=index.getPrefix(uri));
+            return prefix+':'+name;
+        }
+
+        XSPlan compile(XSElementDeclaration root){
+            Particle particle = new Particle();
+            particle.minRepeat = particle.maxRepeat = particle.minOccurs = 1;
+            particle.element = element(root);
+            particleTable.add(particle);
+            computeCosts();
+            return new XSPlan(xsModel, config, rootElement, particle, elementTable.toArray(new Element[0]), prefixes, xsiType);
+        }
+
+        private Particle particle(XSParticle xsParticle){
+            Particle particle = new Particle();
+            particleTable.add(particle);
+            int minOccurs = xsParticle.getMinOccurs();
+            int maxOccurs = xsParticle.getMaxOccursUnbounded() ? -1 : xsParticle.getMaxOccurs();
+
+            XSTerm term = xsParticle.getTerm();
+            if(term instanceof XSModelGroup && ((XSModelGroup)term).getCompositor()==XSModelGroup.COMPOSITOR_CHOICE){
+                particle.choice = group((XSModelGroup)term);
+                int count = particle.choice.particles.length;
+                if(!config.generateAllChoices && maxOccurs!=-1)
+                    count = Math.min(count, maxOccurs);
+                particle.choiceCount = count;
+                particle.minOccurs = Math.min(minOccurs, count);
+                return particle;
+            }
+
+            particle.minOccurs = minOccurs;
+            if(minOccurs==0 && maxOccurs==1) //optional case
+                particle.optional = true;
+            else{
+                if(maxOccurs==-1)
+                    maxOccurs = Math.max(minOccurs, config.maximumElementsGenerated);
+                if(config.minimumElementsGenerated>maxOccurs || config.maximumElementsGenerated<minOccurs){ // doesn't intersect
+                    particle.minRepeat = minOccurs;
+                    particle.maxRepeat = maxOccurs;
+                }else{ // find intersecting range
+                    particle.minRepeat = Math.max(minOccurs, config.minimumElementsGenerated);
+                    particle.maxRepeat = Math.min(maxOccurs, config.maximumElementsGenerated);
+                }
+            }
+
+            if(term instanceof XSElementDeclaration)
+                particle.element = element((XSElementDeclaration)term);
+            else if(term instanceof XSModelGroup)
+                particle.group = group((XSModelGroup)term);
+            else
+                particle.wildcard = new Wildcard((XSWildcard)term);
+            return particle;
+        }
+
+        private Group group(XSModelGroup modelGroup){
+            Group group = groups.get(modelGroup);
+            if(group==null){
+                group = new Group();
+                groups.put(modelGroup, group);
+                group.all = modelGroup.getCompositor()==XSModelGroup.COMPOSITOR_ALL;
+                XSObjectList list = modelGroup.getParticles();
+                group.particles = new Particle[list.getLength()];
+                for(int i=0; i<group.particles.length; i++)
+                    group.particles[i] = particle((XSParticle)list.item(i));
+            }
+            return group;
+        }
+
+        private Element element(XSElementDeclaration decl){
+            Element elem = elements.get(decl);
+            if(elem!=null)
+                return elem;
+
+            elem = new Element(elementTable.size(), decl);
+            elem.qName = qName(elem.namespace, elem.name);
+            elements.put(decl, elem);
+            elementTable.add(elem);
+            elem.provider = config.valueProviders.of(decl);
+
+            if(decl.getAbstract()){
+                List<XSElementDeclaration> members = index.getSubstitutes(decl);
+                elem.substitutes = new Element[members.size()];
+                for(int i=0; i<elem.substitutes.length; i++)
+                    elem.substitutes[i] = element(members.get(i));
+                return elem;
+            }
+
+            XSTypeDefinition typeDef = decl.getTypeDefinition();
+            if(typeDef instanceof XSComplexTypeDefinition){
+                XSComplexTypeDefinition complexType = (XSComplexTypeDefinition)typeDef;
+                if(complexType.getAbstract()){
+                    List<XSComplexTypeDefinition> subTypes = index.getSubTypes(complexType);
+                    elem.types = new Type[subTypes.size()];
+                    for(int i=0; i<elem.types.length; i++){
+                        elem.types[i] = type(subTypes.get(i));
+                        elem.types[i].qName = qName(elem.types[i].namespace, elem.types[i].name);
+                    }
+                    elem.xsiType = true;
+                }
+                if(config.showContentModel)
+                    elem.contentModel = index.getContentModel(complexType);
+            }
+            if(elem.types==null)
+                elem.types = new Type[]{ type(typeDef) };
+            return elem;
+        }
+
+        private Type type(XSTypeDefinition typeDef){
+            Type type = types.get(typeDef);
+            if(type!=null)
+                return type;
+
+            type = new Type(typeDef);
+            types.put(typeDef, type);
+            if(typeDef.getTypeCategory()==XSTypeDefinition.SIMPLE_TYPE){
+                type.value = value((XSSimpleTypeDefinition)typeDef);
+                type.attributes = new Attribute[0];
+                return type;
+            }
+
+            XSComplexTypeDefinition complexType = (XSComplexTypeDefinition)typeDef;
+            if(complexType.getContentType()==XSComplexTypeDefinition.CONTENTTYPE_SIMPLE)
+                type.value = value(complexType.getSimpleType());
+
+            XSObjectList attrUses = complexType.getAttributeUses();
+            type.attributes = new Attribute[attrUses.getLength()];
+            for(int i=0; i<type.attributes.length; i++){
+                XSAttributeUse attrUse = (XSAttributeUse)attrUses.item(i);
+                Attribute attr = new Attribute(attrUse);
+                attr.qName = qName(attr.namespace, attr.name);
+                attr.value = value(attrUse.getAttrDeclaration().getTypeDefinition());
+                attr.provider = config.valueProviders.of(attrUse.getAttrDeclaration());
+                type.attributes[i] = attr;
+            }
+            if(complexType.getAttributeWildcard()!=null)
+                type.attributeWildcard = new Wildcard(complexType.getAttributeWildcard());
+            if(complexType.getParticle()!=null) // element-only or mixed content, empty and simple content have none
+                type.particle = particle(complexType.getParticle());
+            return type;
+        }
+
+        private Value value(XSSimpleTypeDefinition simpleType){
+            Value value = values.get(simpleType);
+            if(value!=null)
+                return value;
+
+            value = new Value(simpleType);
+            values.put(simpleType, value);
+            switch(value.variety){
+                case VARIETY_LIST:
+                    value.itemType = value(simpleType.getItemType());
+                    break;
+                case VARIETY_UNION:
+                    XSObjectList members = simpleType.getMemberTypes();
+                    value.memberTypes = new Value[members.getLength()];
+                    for(int i=0; i<value.memberTypes.length; i++)
+                        value.memberTypes[i] = value((XSSimpleTypeDefinition)members.item(i));
+                    break;
+                default:
+                    XSSimpleTypeDefinition builtInType = simpleType;
+                    while(!Namespaces.URI_XSD.equals(builtInType.getNamespace()))
+                        builtInType = (XSSimpleTypeDefinition)builtInType.getBaseType();
+                    value.builtInType = builtInType.getName().toLowerCase();
+                    value.numeric = simpleType.getNumeric();
+                    value.patterns = patterns(simpleType, builtInType);
+            }
+            value.facets = new XSFacets(simpleType, value.numeric);
+            if(value.numeric)
+                value.number = XSNumber.of(value.builtInType, value.facets);
+            else if(value.builtInType!=null)
+                value.temporal = XSTemporal.of(value.builtInType, value.facets);
+            if(value.facets.enums.length==0)
+                value.provider = config.valueProviders.of(simpleType);
+            return value;
+        }
+
+        /*-------------------------------------------------[ Costs ]---------------------------------------------------*/
+
+        /**
+         * computes the minimal costs of all nodes, starting from infinite ones and lowering
+         * them until nothing changes, as recursive content depends on its own cost
+         */
+        private void computeCosts(){
+            boolean changed = true;
+            while(changed){
+                changed = false;
+                for(int i=particleTable.size()-1; i>=0; i--)
+                    changed |= cost(particleTable.get(i));
+                for(Group group: groups.values())
+                    changed |= group.update(sumElements(group.particles, group.particles.length), sumSize(group.particles, group.particles.length));
+                for(Type type: types.values())
+                    changed |= cost(type);
+                for(Element elem: elementTable)
+                    changed |= cost(elem);
+            }
+        }
+
+        private boolean cost(Particle particle){
+            if(particle.choice!=null){
+                // the minOccurs cheapest choices
+                Particle[] choices = particle.choice.particles.clone();
+                Arrays.sort(choices, (p1, p2) -> p1.cheaper(p2) ? -1 : p2.cheaper(p1) ? 1 : 0);
+                return particle.update(sumElements(choices, particle.minOccurs), sumSize(choices, particle.minOccurs));
+            }
+            if(particle.element!=null){
+                particle.termElements = particle.element.minElements;
+                particle.termSize = particle.element.minSize;
+            }else if(particle.group!=null){
+                particle.termElements = particle.group.minElements;
+                particle.termSize = particle.group.minSize;
+            }else{
+                particle.termElements = 1;
+                particle.termSize = tagSize("anyElement");
+            }
+            return particle.update(multiply(particle.termElements, particle.minOccurs), multiply(particle.termSize, particle.minOccurs));
+        }
+
+        private static long sumElements(Particle[] particles, int count){
+            long sum = 0;
+            for(int i=0; i<count; i++)
+                sum = add(sum, particles[i].minElements);
+            return sum;
+        }
+
+        private static long sumSize(Particle[] particles, int count){
+            long sum = 0;
+            for(int i=0; i<count; i++)
+                sum = add(sum, particles[i].minSize);
+            return sum;
+        }
+
+        private boolean cost(Type type){
+            long minElements = 0, minSize = 0;
+            for(Attribute attr: type.attributes){
+                if(attr.required)
+                    minSize = add(minSize, attributeSize(attr.qName, ""));
+            }
+            if(type.particle!=null){
+                minElements = type.particle.minElements;
+                minSize = add(minSize, type.particle.minSize);
+            }
+            return type.update(minElements, minSize);
+        }
+
+        private boolean cost(Element elem){
+            Cost cheapest = null;
+            for(Cost cost: elem.substitutes!=null ? elem.substitutes : elem.types){
+                if(cheapest==null || cost.cheaper(cheapest))
+                    cheapest = cost;
+            }
+            if(cheapest==null)
+                return elem.update(INFINITE, INFINITE);
+            if(elem.substitutes!=null)
+                return elem.update(cheapest.minElements, cheapest.minSize);
+            return elem.update(add(cheapest.minElements, 1), add(cheapest.minSize, elem.size()));
+        }
+
+        /*-------------------------------------------------[ Patterns ]---------------------------------------------------*/
+
+        private XSPattern[] patterns(XSSimpleTypeDefinition simpleType, XSSimpleTypeDefinition builtInType){
+            StringList lexicalPatterns = simpleType.getLexicalPattern();
+            // built-in patterns are left to the generation by built-in type, except for xs:language
+            // where hint+counter would be invalid
+            StringList builtInPatterns = "language".equals(builtInType.getName()) ? null : builtInType.getLexicalPattern();
+            List<XSPattern> patterns = new ArrayList<XSPattern>();
+            for(int i=0; i<lexicalPatterns.getLength(); i++){
+                String pattern = lexicalPatterns.item(i);
+                if(builtInPatterns==null || !builtInPatterns.contains(pattern)){
+                    try{
+                        patterns.add(XSPattern.compile(pattern));
+                    }catch(IllegalArgumentException ex){
+                        // not supported, left to the validation of the generated values
+                    }
+                }
+            }
+            return patterns.isEmpty() ? null : patterns.toArray(new XSPattern[0]);
+        }
+    }
+}
@@ -0,0 +1,639 @@
+package jlibs.xml.xsd;
+
+import jlibs.core.util.RandomUtil;
+
+/**
+ * Generates values of the date, time and duration built-in types which satisfy the bounds of their type.
+ * <p>
+ * Values are generated as whole units of the type, e.g. days for xs:date, between the bounds normalized
+ * to UTC, and written without any formatter. Years of unbounded types lie between 1900 and 2099, and
+ * never leave the years 0001 to 9999. Timezones are generated only where the bounds stay comparable
+ * with them. Instances are immutable.
+ */
+abstract class XSTemporal{
+    static final long SECOND = 1000;
+    static final long MINUTE = 60*SECOND;
+    static final long HOUR = 60*MINUTE;
+    static final long DAY = 24*HOUR;
+
+    /** values with and without timezone are not comparable if they are closer than this */
+    private static final long MAXIMUM_OFFSET = 14*HOUR;
+
+    abstract String generate(RandomUtil random);
+
+    /**
+     * @param builtInType   lower-cased name of the built-in type
+     * @return null if the built-in type is not a date, time or duration
+     */
+    static XSTemporal of(String builtInType, XSFacets facets){
+        switch(builtInType){
+            case "datetime": return new Calendar(Calendar.DATETIME, facets);
+            case "time": return new Calendar(Calendar.TIME, facets);
+            case "date": return new Calendar(Calendar.DATE, facets);
+            case "gyearmonth": return new Calendar(Calendar.GYEARMONTH, facets);
+            case "gyear": return new Calendar(Calendar.GYEAR, facets);
+            case "gmonthday": return new Calendar(Calendar.GMONTHDAY, facets);
+            case "gmonth": return new Calendar(Calendar.GMONTH, facets);
+            case "gday": return new Calendar(Calendar.GDAY, facets);
+            case "duration": return new Duration(facets);
+            default: return null;
+        }
+    }
+
+    /** random milliseconds between the bounds, in whole seconds unless there are none or the random decides otherwise */
+    private static long millis(RandomUtil random, long min, long max){
+        long minSeconds = -Math.floorDiv(-min, SECOND);
+        long maxSeconds = Math.floorDiv(max, SECOND);
+        if(minSeconds<=maxSeconds && !random.randomBoolean())
+            return random.random(minSeconds, maxSeconds)*SECOND;
+        return random.random(min, max);
+    }
+
+    /*-------------------------------------------------[ Calendar ]---------------------------------------------------*/
+
+    /** days since 1970-01-01 of the given date of the proleptic gregorian calendar */
+    static long days(long year, int month, int day){
+        year -= month<=2 ? 1 : 0;
+        long era = Math.floorDiv(year, 400);
+        long yearOfEra = year - era*400;
+        long dayOfYear = (153*(month>2 ? month-3 : month+9) + 2)/5 + day-1;
+        long dayOfEra = yearOfEra*365 + yearOfEra/4 - yearOfEra/100 + dayOfYear;
+        return era*146097 + dayOfEra - 719468;
+    }
+
+    /** the date of the given days since 1970-01-01, as year*10000 + month*100 + day */
+    static long date(long days){
+        days += 719468;
+        long era = Math.floorDiv(days, 146097);
+        long dayOfEra = days - era*146097;
+        long yearOfEra = (dayOfEra - dayOfEra/1460 + dayOfEra/36524 - dayOfEra/146096)/365;
+        long dayOfYear = dayOfEra - (365*yearOfEra + yearOfEra/4 - yearOfEra/100);
+        long shiftedMonth = (5*dayOfYear + 2)/153;
+        long day = dayOfYear - (153*shiftedMonth + 2)/5 + 1;
+        long month = shiftedMonth<10 ? shiftedMonth+3 : shiftedMonth-9;
+        long year = yearOfEra + era*400 + (month<=2 ? 1 : 0);
+        return year*10000 + month*100 + day;
+    }
+
+    private static final class Calendar extends XSTemporal{
+        static final int DATETIME = 0;
+        static final int TIME = 1;
+        static final int DATE = 2;
+        static final int GYEARMONTH = 3;
+        static final int GYEAR = 4;
+        static final int GMONTHDAY = 5;
+        static final int GMONTH = 6;
+        static final int GDAY = 7;
+
+        private static final int ZONE_NONE = 0;
+        private static final int ZONE_UTC = 1;
+        private static final int ZONE_ANY = 2;
+
+        /** year of the recurring types, a leap year so that --02-29 exists */
+        static final int YEAR = 2000;
+
+        private static final long MIN = days(1, 1, 1)*DAY;
+        private static final long MAX = days(10000, 1, 1)*DAY - 1;
+        private static final long DEFAULT_MIN = days(1900, 1, 1)*DAY;
+        private static final long DEFAULT_MAX = days(2100, 1, 1)*DAY - 1;
+
+        private final int kind;
+        private final int zone;
+
+        /** bounds in units of the type: milliseconds, days, months or years */
+        private final long min, max;
+
+        Calendar(int kind, XSFacets facets){
+            this.kind = kind;
+            Bound minInclusive = Bound.calendar(facets.minInclusive, kind);
+            Bound minExclusive = Bound.calendar(facets.minExclusive, kind);
+            Bound maxInclusive = Bound.calendar(facets.maxInclusive, kind);
+            Bound maxExclusive = Bound.calendar(facets.maxExclusive, kind);
+
+            int bounds = 0, zoned = 0;
+            for(Bound bound: new Bound[]{ minInclusive, minExclusive, maxInclusive, maxExclusive }){
+                if(bound!=null){
+                    bounds++;
+                    if(bound.zoned)
+                        zoned++;
+                }
+            }
+            zone = bounds==0 ? ZONE_ANY : zoned==bounds ? ZONE_UTC : ZONE_NONE;
+            boolean utc = zone==ZONE_UTC;
+
+            long lower = Long.MIN_VALUE, upper = Long.MAX_VALUE;
+            if(minInclusive!=null)
+                lower = Math.max(lower, minInclusive.lower(false, utc));
+            if(minExclusive!=null)
+                lower = Math.max(lower, minExclusive.lower(true, utc));
+            if(maxInclusive!=null)
+                upper = Math.min(upper, maxInclusive.upper(false, utc));
+            if(maxExclusive!=null)
+                upper = Math.min(upper, maxExclusive.upper(true, utc));
+
+            long first, last;
+            switch(kind){
+                case TIME:
+                    first = 0;
+                    last = DAY-1;
+                    break;
+                case GMONTHDAY:
+                case GMONTH:
+                    first = days(YEAR, 1, 1)*DAY;
+                    last = days(YEAR+1, 1, 1)*DAY - 1;
+                    break;
+                case GDAY:
+                    first = days(YEAR, 1, 1)*DAY;
+                    last = days(YEAR, 2, 1)*DAY - 1;
+                    break;
+                default:
+                    first = MIN;
+                    last = MAX;
+                    if(lower==Long.MIN_VALUE)
+                        lower = upper==Long.MAX_VALUE ? DEFAULT_MIN : Math.min(DEFAULT_MIN, upper-(DEFAULT_MAX-DEFAULT_MIN));
+                    if(upper==Long.MAX_VALUE)
+                        upper = Math.max(DEFAULT_MAX, lower+(DEFAULT_MAX-DEFAULT_MIN));
+            }
+            lower = Math.max(lower, first);
+            upper = Math.min(upper, last);
+
+            long min = unit(lower);
+            if(start(min)<lower)
+                min++;
+            this.min = min;
+            max = Math.max(min, unit(upper));
+        }
+
+        /** the unit containing the given milliseconds */
+        private long unit(long millis){
+            switch(kind){
+                case DATETIME:
+                case TIME:
+                    return millis;
+                case DATE:
+                case GMONTHDAY:
+                case GDAY:
+                    return Math.floorDiv(millis, DAY);
+                default:
+                    long date = date(Math.floorDiv(millis, DAY));
+                    long year = Math.floorDiv(date, 10000);
+                    return kind==GYEAR ? year : year*12 + Math.floorMod(date, 10000)/100 - 1;
+            }
+        }
+
+        /** milliseconds at which the given unit starts */
+        private long start(long unit){
+            switch(kind){
+                case DATETIME:
+                case TIME:
+                    return unit;
+                case DATE:
+                case GMONTHDAY:
+                case GDAY:
+                    return unit*DAY;
+                case GYEAR:
+                    return days(unit, 1, 1)*DAY;
+                default:
+                    return days(Math.floorDiv(unit, 12), Math.floorMod(unit, 12)+1, 1)*DAY;
+            }
+        }
+
+        @Override
+        String generate(RandomUtil random){
+            long value = kind==DATETIME || kind==TIME ? millis(random, min, max) : random.random(min, max);
+            char[] buff = new char[32];
+            int pos = 0;
+            long date;
+            switch(kind){
+                case DATETIME:
+                    pos = date(buff, pos, date(Math.floorDiv(value, DAY)));
+                    buff[pos++] = 'T';
+                    pos = time(buff, pos, Math.floorMod(value, DAY));
+                    break;
+                case TIME:
+                    pos = time(buff, pos, Math.floorMod(value, DAY));
+                    break;
+                case DATE:
+                    pos = date(buff, pos, date(value));
+                    break;
+                case GYEARMONTH:
+                    pos = digits(buff, pos, Math.floorDiv(value, 12), 4);
+                    buff[pos++] = '-';
+                    pos = digits(buff, pos, Math.floorMod(value, 12)+1, 2);
+                    break;
+                case GYEAR:
+                    pos = digits(buff, pos, value, 4);
+                    break;
+                case GMONTHDAY:
+                    date = date(value);
+                    buff[pos++] = '-';
+                    buff[pos++] = '-';
+                    pos = digits(buff, pos, date%10000/100, 2);
+                    buff[pos++] = '-';
+                    pos = digits(buff, pos, date%100, 2);
+                    break;
+                case GMONTH:
+                    buff[pos++] = '-';
+                    buff[pos++] = '-';
+                    pos = digits(buff, pos, Math.floorMod(value, 12)+1, 2);
+                    break;
+                case GDAY:
+                    buff[pos++] = '-';
+                    buff[pos++] = '-';
+                    buff[pos++] = '-';
+                    pos = digits(buff, pos, date(value)%100, 2);
+            }
+
+            if(zone==ZONE_UTC)
+                buff[pos++] = 'Z';
+            else if(zone==ZONE_ANY){
+                int choice = random.random(0, 2);
+                if(choice==1)
+                    buff[pos++] = 'Z';
+                else if(choice==2){
+                    int offset = random.random(-56, 56)*15;
+                    buff[pos++] = offset<0 ? '-' : '+';
+                    offset = Math.abs(offset);
+                    pos = digits(buff, pos, offset/60, 2);
+                    buff[pos++] = ':';
+                    pos = digits(buff, pos, offset%60, 2);
+                }
+            }
+            return new String(buff, 0, pos);
+        }
+
+        private static int date(char[] buff, int pos, long date){
+            pos = digits(buff, pos, date/10000, 4);
+            buff[pos++] = '-';
+            pos = digits(buff, pos, date%10000/100, 2);
+            buff[pos++] = '-';
+            return digits(buff, pos, date%100, 2);
+        }
+
+        private static int time(char[] buff, int pos, long millis){
+            pos = digits(buff, pos, millis/HOUR, 2);
+            buff[pos++] = ':';
+            pos = digits(buff, pos, millis%HOUR/MINUTE, 2);
+            buff[pos++] = ':';
+            pos = digits(buff, pos, millis%MINUTE/SECOND, 2);
+            return fraction(buff, pos, millis);
+        }
+    }
+
+    /*-------------------------------------------------[ Duration ]---------------------------------------------------*/
+
+    private static final class Duration extends XSTemporal{
+        private static final long DEFAULT_MONTHS = 10*12;
+        private static final long DEFAULT_MILLIS = 30*DAY;
+
+        /** bounds of the months and milliseconds, both are generated if neither is constant */
+        private final long minMonths, maxMonths;
+        private final long minMillis, maxMillis;
+
+        /** the value used where the bounds mix months and days, which are not comparable */
+        private final String constant;
+
+        Duration(XSFacets facets){
+            Bound minInclusive = Bound.duration(facets.minInclusive);
+            Bound minExclusive = Bound.duration(facets.minExclusive);
+            Bound maxInclusive = Bound.duration(facets.maxInclusive);
+            Bound maxExclusive = Bound.duration(facets.maxExclusive);
+
+            int bounds = 0, days = 0, months = 0;
+            for(Bound bound: new Bound[]{ minInclusive, minExclusive, maxInclusive, maxExclusive }){
+                if(bound!=null){
+                    bounds++;
+                    if(bound.months==0)
+                        days++;
+                    if(bound.millis==0 && !bound.remainder)
+                        months++;
+                }
+            }
+
+            long lower = Long.MIN_VALUE, upper = Long.MAX_VALUE;
+            if(bounds>0 && (days==bounds || months==bounds)){
+                boolean inDays = days==bounds;
+                if(minInclusive!=null)
+                    lower = Math.max(lower, minInclusive.lower(false, false));
+                if(minExclusive!=null)
+                    lower = Math.max(lower, minExclusive.lower(true, false));
+                if(maxInclusive!=null)
+                    upper = Math.min(upper, maxInclusive.upper(false, false));
+                if(maxExclusive!=null)
+                    upper = Math.min(upper, maxExclusive.upper(true, false));
+
+                long span = inDays ? DEFAULT_MILLIS : DEFAULT_MONTHS;
+                if(lower==Long.MIN_VALUE)
+                    lower = Math.min(0, upper-span);
+                if(upper==Long.MAX_VALUE)
+                    upper = Math.max(span, lower+span);
+                upper = Math.max(lower, upper);
+                minMonths = inDays ? 0 : lower;
+                maxMonths = inDays ? 0 : upper;
+                minMillis = inDays ? lower : 0;
+                maxMillis = inDays ? upper : 0;
+                constant = null;
+            }else{
+                minMonths = minMillis = 0;
+                maxMonths = DEFAULT_MONTHS;
+                maxMillis = DEFAULT_MILLIS;
+                constant = bounds==0 ? null
+                        : facets.minInclusive!=null ? facets.minInclusive : facets.maxInclusive;
+            }
+        }
+
+        @Override
+        String generate(RandomUtil random){
+            if(constant!=null)
+                return constant;
+            long months = random.random(minMonths, maxMonths);
+            long millis = millis(random, minMillis, maxMillis);
+
+            char[] buff = new char[64];
+            int pos = 0;
+            if(months<0 || millis<0){
+                buff[pos++] = '-';
+                months = -months;
+                millis = -millis;
+            }
+            buff[pos++] = 'P';
+            if(months>=12){
+                pos = digits(buff, pos, months/12, 1);
+                buff[pos++] = 'Y';
+            }
+            if(months%12!=0){
+                pos = digits(buff, pos, months%12, 1);
+                buff[pos++] = 'M';
+            }
+            if(millis>=DAY){
+                pos = digits(buff, pos, millis/DAY, 1);
+                buff[pos++] = 'D';
+            }
+            millis %= DAY;
+            if(millis!=0 || buff[pos-1]=='P'){
+                buff[pos++] = 'T';
+                if(millis>=HOUR){
+                    pos = digits(buff, pos, millis/HOUR, 1);
+                    buff[pos++] = 'H';
+                }
+                if(millis%HOUR>=MINUTE){
+                    pos = digits(buff, pos, millis%HOUR/MINUTE, 1);
+                    buff[pos++] = 'M';
+                }
+                if(millis%MINUTE!=0 || millis==0){
+                    pos = digits(buff, pos, millis%MINUTE/SECOND, 1);
+                    pos = fraction(buff, pos, millis);
+                    buff[pos++] = 'S';
+                }
+            }
+            return new String(buff, 0, pos);
+        }
+    }
+
+    /*-------------------------------------------------[ Formatting ]---------------------------------------------------*/
+
+    /** writes the non-negative value with at least the given number of digits */
+    private static int digits(char[] buff, int pos, long value, int width){
+        int count = 1;
+        for(long v=value; v>=10; v/=10)
+            count++;
+        for(int i=count; i<width; i++)
+            buff[pos++] = '0';
+        pos += count;
+        for(int i=1; i<=count; i++){
+            buff[pos-i] = (char)('0'+value%10);
+            value /= 10;
+        }
+        return pos;
+    }
+
+    /** writes the milliseconds of the second, without trailing zeros, if there are any */
+    private static int fraction(char[] buff, int pos, long millis){
+        int fraction = (int)(millis%SECOND);
+        if(fraction==0)
+            return pos;
+        buff[pos++] = '.';
+        pos = digits(buff, pos, fraction, 3);
+        while(buff[pos-1]=='0')
+            pos--;
+        return pos;
+    }
+
+    /*-------------------------------------------------[ Bounds ]---------------------------------------------------*/
+
+    /**
+     * The value of a bound facet. Dates and times are in milliseconds since 1970 normalized to UTC,
+     * with the missing fields of the recurring types taken from {@link Calendar#YEAR}; durations are
+     * in months and milliseconds. Milliseconds are rounded down, fractions beyond them are remembered.
+     */
+    private static final class Bound{
+        private static final long MAXIMUM_NUMBER = 1000000000L;
+        private static final long MAXIMUM_YEAR = 999999L;
+
+        private final String lexical;
+        private int pos;
+
+        long months;
+        long millis;
+        boolean remainder;
+        boolean zoned;
+
+        private Bound(String lexical){
+            this.lexical = lexical.trim();
+        }
+
+        static Bound calendar(String lexical, int kind){
+            if(lexical==null)
+                return null;
+            Bound bound = new Bound(lexical);
+            bound.parseCalendar(kind);
+            return bound;
+        }
+
+        static Bound duration(String lexical){
+            if(lexical==null)
+                return null;
+            Bound bound = new Bound(lexical);
+            bound.parseDuration();
+            return bound;
+        }
+
+        /** least value, in milliseconds or months, after this bound, comparable with or without timezone */
+        long lower(boolean exclusive, boolean utc){
+            long value = months!=0 ? months : millis;
+            if(remainder){
+                value++;
+                exclusive = false;
+            }
+            if(zoned!=utc){
+                value += MAXIMUM_OFFSET;
+                exclusive = true;
+            }
+            return exclusive ? value+1 : value;
+        }
+
+        /** greatest value, in milliseconds or months, before this bound, comparable with or without timezone */
+        long upper(boolean exclusive, boolean utc){
+            long value = months!=0 ? months : millis;
+            if(remainder)
+                exclusive = false;
+            if(zoned!=utc){
+                value -= MAXIMUM_OFFSET;
+                exclusive = true;
+            }
+            return exclusive ? value-1 : value;
+        }
+
+        private boolean at(char ch){
+            return pos<lexical.length() && lexical.charAt(pos)==ch;
+        }
+
+        private long number(){
+            long number = 0;
+            while(pos<lexical.length() && Character.isDigit(lexical.charAt(pos)))
+                number = Math.min(number*10 + lexical.charAt(pos++)-'0', MAXIMUM_NUMBER);
+            return number;
+        }
+
+        /** milliseconds of the fraction following the decimal point */
+        private long fraction(){
+            long millis = 0;
+            int digits = 0;
+            for(; pos<lexical.length() && Character.isDigit(lexical.charAt(pos)); digits++){
+                int digit = lexical.charAt(pos++)-'0';
+                if(digits<3)
+                    millis = millis*10 + digit;
+                else if(digit!=0)
+                    remainder = true;
+            }
+            for(; digits<3; digits++)
+                millis *= 10;
+            return millis;
+        }
+
+        private void parseCalendar(int kind){
+            long year = Calendar.YEAR;
+            int month = 1, day = 1;
+            long time = 0;
+            switch(kind){
+                case Calendar.DATETIME:
+                case Calendar.DATE:
+                case Calendar.GYEARMONTH:
+                case Calendar.GYEAR:
+                    boolean negative = at('-');
+                    if(negative)
+                        pos++;
+                    year = Math.min(number(), MAXIMUM_YEAR);
+                    if(negative)
+                        year = -year;
+                    if(kind!=Calendar.GYEAR){
+                        pos++;
+                        month = (int)number();
+                        if(kind!=Calendar.GYEARMONTH){
+                            pos++;
+                            day = (int)number();
+                        }
+                    }
+                    if(kind==Calendar.DATETIME){
+                        pos++;
+                        time = time();
+                    }
+                    break;
+                case Calendar.TIME:
+                    year = 1970;
+                    time = time();
+                    break;
+                case Calendar.GMONTHDAY:
+                    pos = 2;
+                    month = (int)number();
+                    pos++;
+                    day = (int)number();
+                    break;
+                case Calendar.GMONTH:
+                    pos = 2;
+                    month = (int)number();
+                    if(lexical.startsWith("--", pos) && (pos+2==lexical.length() || !Character.isDigit(lexical.charAt(pos+2))))
+                        pos += 2; // --MM-- of the first edition of XML Schema
+                    break;
+                case Calendar.GDAY:
+                    pos = 3;
+                    day = (int)number();
+            }
+            long offset = 0;
+            if(at('Z')){
+                zoned = true;
+            }else if(at('+') || at('-')){
+                zoned = true;
+                boolean negative = at('-');
+                pos++;
+                offset = number()*HOUR;
+                pos++;
+                offset += number()*MINUTE;
+                if(negative)
+                    offset = -offset;
+            }
+            millis = days(year, month, day)*DAY + time - offset;
+        }
+
+        private long time(){
+            long time = number()*HOUR;
+            pos++;
+            time += number()*MINUTE;
+            pos++;
+            time += number()*SECOND;
+            if(at('.')){
+                pos++;
+                time += fraction();
+            }
+            return time;
+        }
+
+        private void parseDuration(){
+            boolean negative = at('-');
+            if(negative)
+                pos++;
+            pos++; // P
+            boolean time = false;
+            while(pos<lexical.length()){
+                if(at('T')){
+                    time = true;
+                    pos++;
+                    continue;
+                }
+                long number = number();
+                long fraction = 0;
+                if(at('.')){
+                    pos++;
+                    fraction = fraction();
+                }
+                if(pos==lexical.length())
+                    break;
+                switch(lexical.charAt(pos++)){
+                    case 'Y':
+                        months += number*12;
+                        break;
+                    case 'M':
+                        if(time)
+                            millis += number*MINUTE;
+                        else
+                            months += number;
+                        break;
+                    case 'D':
+                        millis += number*DAY;
+                        break;
+                    case 'H':
+                        millis += number*HOUR;
+                        break;
+                    case 'S':
+                        millis += number*SECOND + fraction;
+                }
+            }
+            if(negative){
+                months = -months;
+                millis = -millis;
+                if(remainder)
+                    millis--;
+            }
+        }
+    }
+}
@@ -96,7 +96,7 @@ public class XSUtil{
             }
         };
         Navigator navigator = new FilteredTreeNavigator(new XSNavigator(), filter);
-        WalkerUtil.walk(new PreorderWalker(model, navigator), new Processor<Object>(){
+        WalkerUtil.walk(new PreorderWalker(model, navigator, true), new Processor<Object>(){
             @Override
             public boolean preProcess(Object elem, Path path){
                 if(path.getRecursionDepth()>0)
@@ -0,0 +1,16 @@
+package jlibs.xml.xsd;
+
+import jlibs.core.util.RandomUtil;
+
+/**
+ * Generates values of simple content and attributes, in place of the values derived from the schema.
+ * <p>
+ * All randomness must be drawn from the given random, so that documents are reproduced from their seed.
+ * Providers are shared by all documents generated with a plan, and must be thread safe.
+ *
+ * @see XSValueProviders
+ */
+@FunctionalInterface
+public interface XSValueProvider{
+    String generate(RandomUtil random);
+}
@@ -0,0 +1,134 @@
+package jlibs.xml.xsd;
+
+import org.apache.xerces.xs.XSAttributeDeclaration;
+import org.apache.xerces.xs.XSElementDeclaration;
+import org.apache.xerces.xs.XSFacet;
+import org.apache.xerces.xs.XSObjectList;
+import org.apache.xerces.xs.XSSimpleTypeDefinition;
+import org.apache.xerces.xs.XSTypeDefinition;
+
+import javax.xml.namespace.QName;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link XSValueProvider}s bound to elements and attributes by the name of their declaration, and to simple
+ * types by their name, including the built-in types. Instances are immutable, see {@link #builder()}.
+ * <p>
+ * The bindings are resolved once while compiling a {@link XSPlan}, so that generating a value doesn't look
+ * them up. An element or attribute binding takes precedence over the binding of its type, which applies
+ * to the types derived from it unless a nearer one is bound too. Type bindings are not used for types
+ * with enumerations, whose values are always valid, nor for types restricting the bound type with facets
+ * of their own, like a pattern or a maxLength, which the provided values would not respect.
+ * <p>
+ * As plans compile every declaration once, wherever it occurs, the local declarations of the same name
+ * share their binding.
+ */
+public final class XSValueProviders{
+    public static final XSValueProviders EMPTY = new Builder().build();
+
+    private final Map<QName, XSValueProvider> types;
+    private final Map<QName, XSValueProvider> elements;
+    private final Map<QName, XSValueProvider> attributes;
+
+    private XSValueProviders(Builder builder){
+        types = new HashMap<QName, XSValueProvider>(builder.types);
+        elements = new HashMap<QName, XSValueProvider>(builder.elements);
+        attributes = new HashMap<QName, XSValueProvider>(builder.attributes);
+    }
+
+    public static Builder builder(){
+        return new Builder();
+    }
+
+    public boolean isEmpty(){
+        return types.isEmpty() && elements.isEmpty() && attributes.isEmpty();
+    }
+
+    XSValueProvider of(XSElementDeclaration decl){
+        return elements.isEmpty() ? null : elements.get(name(decl.getNamespace(), decl.getName()));
+    }
+
+    XSValueProvider of(XSAttributeDeclaration decl){
+        return attributes.isEmpty() ? null : attributes.get(name(decl.getNamespace(), decl.getName()));
+    }
+
+    /** the provider bound to the type or its nearest base type, as long as no facets were added in between */
+    XSValueProvider of(XSSimpleTypeDefinition simpleType){
+        if(types.isEmpty())
+            return null;
+        XSTypeDefinition type = simpleType;
+        while(true){
+            if(!type.getAnonymous()){
+                XSValueProvider provider = types.get(name(type.getNamespace(), type.getName()));
+                if(provider!=null)
+                    return provider;
+            }
+            XSTypeDefinition baseType = type.getBaseType();
+            if(baseType==null || baseType==type || !(baseType instanceof XSSimpleTypeDefinition))
+                return null;
+            if(addsFacets((XSSimpleTypeDefinition)type, (XSSimpleTypeDefinition)baseType))
+                return null;
+            type = baseType;
+        }
+    }
+
+    /** whether the restriction constrains the values of its base type further */
+    private static boolean addsFacets(XSSimpleTypeDefinition type, XSSimpleTypeDefinition baseType){
+        if(type.getVariety()!=baseType.getVariety())
+            return true;
+        if(type.getLexicalPattern().getLength()!=baseType.getLexicalPattern().getLength())
+            return true;
+        if(type.getLexicalEnumeration().getLength()!=baseType.getLexicalEnumeration().getLength())
+            return true;
+        return !facets(type).equals(facets(baseType));
+    }
+
+    /** the kinds and values of the facets of the type, but whitespace, which doesn't reject values */
+    private static Set<String> facets(XSSimpleTypeDefinition type){
+        Set<String> set = new HashSet<String>();
+        XSObjectList facets = type.getFacets();
+        for(int i=0; i<facets.getLength(); i++){
+            XSFacet facet = (XSFacet)facets.item(i);
+            if(facet.getFacetKind()!=XSSimpleTypeDefinition.FACET_WHITESPACE)
+                set.add(facet.getFacetKind()+":"+facet.getLexicalFacetValue());
+        }
+        return set;
+    }
+
+    private static QName name(String namespace, String localPart){
+        return new QName(namespace==null ? "" : namespace, localPart);
+    }
+
+    /**
+     * Collects bindings for {@link XSValueProviders}. Later bindings of the same name replace earlier ones.
+     */
+    public static final class Builder{
+        private final Map<QName, XSValueProvider> types = new HashMap<QName, XSValueProvider>();
+        private final Map<QName, XSValueProvider> elements = new HashMap<QName, XSValueProvider>();
+        private final Map<QName, XSValueProvider> attributes = new HashMap<QName, XSValueProvider>();
+
+        private Builder(){}
+
+        public Builder bindType(QName type, XSValueProvider provider){
+            types.put(type, provider);
+            return this;
+        }
+
+        public Builder bindElement(QName element, XSValueProvider provider){
+            elements.put(element, provider);
+            return this;
+        }
+
+        public Builder bindAttribute(QName attribute, XSValueProvider provider){
+            attributes.put(attribute, provider);
+            return this;
+        }
+
+        public XSValueProviders build(){
+            return new XSValueProviders(this);
+        }
+    }
+}
@@ -1,13 +1,52 @@
 package foo;
 
+import dev.nullzwo.jqwik.xml.SchemaCache;
 import dev.nullzwo.jqwik.xml.XmlArbitraries;
+import dev.nullzwo.jqwik.xml.XmlGenerator;
+import jlibs.core.graph.Navigator;
+import jlibs.core.graph.Path;
+import jlibs.core.graph.sequences.ArraySequence;
+import jlibs.core.graph.sequences.EmptySequence;
+import jlibs.core.graph.visitors.ReflectionVisitor;
+import jlibs.core.graph.walkers.PreorderWalker;
+import jlibs.core.util.RandomUtil;
+import jlibs.xml.sax.SAXDelegate;
+import jlibs.xml.sax.XMLDocument;
+import jlibs.xml.sax.XMLWriter;
+import jlibs.xml.xsd.XSConfig;
+import jlibs.xml.xsd.XSInstance;
+import jlibs.xml.xsd.XSPlan;
+import jlibs.xml.xsd.XSUtil;
+import jlibs.xml.xsd.XSValueProviders;
+import net.jqwik.api.Arbitraries;
 import net.jqwik.api.Arbitrary;
+import net.jqwik.api.Shrinkable;
+import org.apache.xerces.xs.XSComplexTypeDefinition;
+import org.apache.xerces.xs.XSElementDeclaration;
+import org.apache.xerces.xs.XSObject;
 import org.junit.jupiter.api.Test;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
 
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.SchemaFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import static dev.nullzwo.jqwik.xml.XmlArbitraries.OptionalAttributes.BOTH;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 
 public class XmlArbitrariesTest {
@@ -20,4 +59,553 @@ public class XmlArbitrariesTest {
 
         assertThat(two).isEqualTo(one);
     }
+
+    @Test
+    void shouldLoadSchemaOnceForEquivalentPaths() {
+        var cache = new SchemaCache(4);
+        var one = cache.get("src/test/resources/example.xsd");
+        var two = cache.get(new File("src/test/resources/../resources/example.xsd").toURI().toString());
+
+        assertThat(two).isSameAs(one);
+        assertThat(cache.stats().missCount()).isEqualTo(1);
+        assertThat(cache.stats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedSchema() {
+        var cache = new SchemaCache(2);
+        var a = cache.get("src/test/resources/example.xsd");
+        cache.get("src/test/resources/config.xsd");
+        cache.get("src/test/resources/example.xsd");
+        var c = cache.get("src/test/resources/numbers.xsd");
+
+        assertThat(cache.stats().evictionCount()).isEqualTo(1);
+        assertThat(cache.get("src/test/resources/numbers.xsd")).isSameAs(c);
+        assertThat(cache.get("src/test/resources/example.xsd")).isSameAs(a);
+        assertThat(cache.stats().missCount()).isEqualTo(3);
+
+        cache.get("src/test/resources/config.xsd");
+        assertThat(cache.stats().missCount()).isEqualTo(4);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldWriteOnlyCharactersAllowedInXml() throws Exception {
+        var writer = new XMLWriter(true, -1);
+        writer.startDocument();
+        writer.startElement("", "a", "a", new AttributesImpl());
+        writer.characters("\t\u00e9\u20ac\ud83d\ude00\n");
+        writer.endElement("", "a", "a");
+        writer.endDocument();
+        assertThat(new String(writer.toByteArray(), StandardCharsets.UTF_8)).isEqualTo("<a>\t\u00e9\u20ac\ud83d\ude00\n</a>");
+
+        for (String text : new String[]{"\u0001", "x\ud83d", "\ude00x", "\uffff"}) {
+            writer.startDocument();
+            writer.startElement("", "a", "a", new AttributesImpl());
+            assertThatThrownBy(() -> writer.characters(text)).isInstanceOf(SAXException.class);
+        }
+    }
+
+    @Test
+    void shouldGetElementsOfPath() {
+        var path = new Path("a").append(1, 0).append("b", 1).append(2, 0);
+
+        assertThat(path.getLength()).isEqualTo(4);
+        assertThat(path.toArray()).containsExactly("a", 1, "b", 2);
+        for (int i = 0; i < 4; i++) {
+            assertThat(path.getElement(i)).isEqualTo(path.toArray()[i]);
+        }
+        assertThatThrownBy(() -> path.getElement(4)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThatThrownBy(() -> path.getElement(-1)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void shouldTrackRecursionAndTypedParentsOfReusedPaths() {
+        // a -> 1 -> a -> ..., cut at the second recursion
+        Navigator<Object> navigator = elem -> "a".equals(elem) ? new ArraySequence<Object>(1, "b")
+                : Integer.valueOf(1).equals(elem) ? new ArraySequence<Object>("a")
+                : EmptySequence.getInstance();
+
+        for (boolean reusePaths : new boolean[]{false, true}) {
+            var walker = new PreorderWalker<Object>("a", navigator, reusePaths);
+            var visited = new ArrayList<String>();
+            for (Object elem = walker.next(); elem != null; elem = walker.next()) {
+                var path = walker.getCurrentPath();
+                var elements = Arrays.asList(path.toArray());
+                var current = elem;
+                int depth = (int) elements.subList(0, elements.size() - 1).stream().filter(e -> e == current).count();
+                assertThat(path.getRecursionDepth()).isEqualTo(depth);
+                for (var type : new Class<?>[]{String.class, Integer.class}) {
+                    Path parent = path.getParentPath(type);
+                    int expected = elements.size() - 2;
+                    while (expected >= 0 && !type.isInstance(elements.get(expected))) {
+                        expected--;
+                    }
+                    assertThat(parent == null ? -1 : parent.getLength() - 1).isEqualTo(expected);
+                    assertThat(path.getParentPath(type)).isSameAs(parent);
+                }
+                visited.add(path.toString() + " " + path.getRecursionDepth());
+                if (path.getRecursionDepth() == 2) {
+                    walker.skip();
+                }
+            }
+            assertThat(visited).containsExactly("a 0", "a, 1 0", "a, 1, a 1", "a, 1, a, 1 1", "a, 1, a, 1, a 2",
+                    "a, 1, a, b 0", "a, b 0");
+        }
+    }
+
+    @Test
+    void shouldGenerateSameDocumentsFromPlanCompiledOnce() {
+        for (var schema : new String[][]{{"example", "shiporder"}, {"recursive", "book"}}) {
+            var model = SchemaCache.getDefault().get("src/test/resources/" + schema[0] + ".xsd").getModel();
+            var config = new XSConfig();
+            var root = new QName(schema[1]);
+            var plan = XSPlan.compile(model, root, config);
+
+            for (long seed = 0; seed < 20; seed++) {
+                var compiledOnce = new XMLWriter(true, 4);
+                new XSInstance(new RandomUtil(new Random(seed)), config)
+                        .generate(plan, new XMLDocument(new SAXDelegate(compiledOnce)));
+                var compiledForEach = new XMLWriter(true, 4);
+                new XSInstance(new RandomUtil(new Random(seed)), config)
+                        .generate(model, root, new XMLDocument(new SAXDelegate(compiledForEach)));
+
+                assertThat(compiledOnce.toByteArray()).isEqualTo(compiledForEach.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    void shouldIndexConcreteSubtypesAndSubstitutes() throws Exception {
+        var schema = SchemaCache.getDefault().get("src/test/resources/substitution.xsd");
+        var model = schema.getModel();
+        var index = schema.getIndex();
+        Function<String, XSComplexTypeDefinition> type = name -> (XSComplexTypeDefinition) model.getTypeDefinition(name, null);
+        Function<String, XSElementDeclaration> element = name -> model.getElementDeclaration(name, null);
+
+        assertThat(index.getSubTypes(type.apply("shapeType"))).extracting(XSObject::getName)
+                .containsExactlyInAnyOrder("roundType", "boxType");
+        assertThat(index.getSubTypes(type.apply("angularType"))).extracting(XSObject::getName).containsExactly("boxType");
+        assertThat(index.getSubTypes(type.apply("boxType"))).isEmpty();
+        for (var name : new String[]{"shapeType", "angularType", "boxType"}) {
+            assertThat(index.getSubTypes(type.apply(name))).isEqualTo(XSUtil.getSubTypes(model, type.apply(name)));
+        }
+
+        assertThat(index.getSubstitutes(element.apply("shape"))).extracting(XSObject::getName)
+                .containsExactlyInAnyOrder("circle", "square");
+        assertThat(index.getSubstitutes(element.apply("polygon"))).extracting(XSObject::getName).containsExactly("square");
+        assertThat(index.getSubstitutes(element.apply("circle"))).isEmpty();
+
+        var config = new XSConfig();
+        config.generateAllChoices = false;
+        var generator = schema.generator(new QName("drawing"), config);
+        var validator = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .newSchema(new File("src/test/resources/substitution.xsd"))
+                .newValidator();
+        var documents = new StringBuilder();
+        for (long seed = 0; seed < 20; seed++) {
+            var xml = generator.generate(seed);
+            validator.validate(new StreamSource(new ByteArrayInputStream(xml)));
+            documents.append(new String(xml, StandardCharsets.UTF_8));
+        }
+        assertThat(documents).contains("<circle ", "<square ", "xsi:type=\"boxType\"")
+                .doesNotContain("<shape ", "<polygon ");
+    }
+
+    @Test
+    void shouldParseFacetsOfSimpleTypes() {
+        var config = new XSConfig();
+        config.generateAllChoices = false;
+        var edgeCases = new ArrayList<String>();
+        XmlArbitraries.fromXsdFile("src/test/resources/facets.xsd", "facets", config).edgeCases(10)
+                .forEach(edgeCase -> edgeCases.add(new String(edgeCase.value(), StandardCharsets.UTF_8)));
+
+        // minExclusive is tighter than the inherited minInclusive, fractionDigits and totalDigits bound the decimal
+        var minimal = edgeCases.get(0);
+        assertThat(minimal).contains("<count>6</count>", "<price>0.01</price>", "<level>low</level>")
+                .containsPattern("<id>.{7}</id>")
+                .containsPattern("<name>.{12}</name>");
+        var maximal = edgeCases.get(1);
+        assertThat(maximal).contains("<count>20</count>", "<price>999.99</price>", "<level>high</level>")
+                .containsPattern("<id>.{7}</id>")
+                .containsPattern("<name>.{20}</name>");
+    }
+
+    @Test
+    void shouldShrinkToSmallestFailingDocument() {
+        Predicate<byte[]> hasNote = xml -> new String(xml, StandardCharsets.UTF_8).contains("<note>");
+        var shrinkable = arb.generator(1000).stream(new Random(0))
+                .filter(s -> hasNote.test(s.value()))
+                .findFirst()
+                .orElseThrow();
+
+        Shrinkable<byte[]> shrunk = shrinkable;
+        for (var next = shrunk; next != null; ) {
+            shrunk = next;
+            next = shrunk.shrink().filter(s -> hasNote.test(s.value())).findFirst().orElse(null);
+        }
+
+        var xml = new String(shrunk.value(), StandardCharsets.UTF_8);
+        assertThat(xml.split("<item>", -1)).hasSize(2);
+        assertThat(xml).contains("<quantity>1</quantity>");
+        assertThat(shrunk.distance()).isLessThan(shrinkable.distance());
+    }
+
+    @Test
+    void shouldStreamSameDocumentAsGenerated() throws Exception {
+        var generator = XmlArbitraries.generator("src/test/resources/example.xsd", "shiporder", BOTH);
+        var out = new ByteArrayOutputStream();
+        generator.generate(42, out);
+
+        try (var in = generator.supplier(42).get()) {
+            assertThat(in.readAllBytes()).isEqualTo(out.toByteArray()).isEqualTo(generator.generate(42));
+        }
+
+        var pool = Executors.newSingleThreadExecutor();
+        try {
+            for (int i = 0; i < 3; i++) { // each stream frees the only thread when closed
+                try (var in = generator.open(42, pool)) {
+                    assertThat(in.read()).isEqualTo(out.toByteArray()[0]);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void shouldGenerateValuesMatchingPatterns() throws Exception {
+        var patterns = XmlArbitraries.fromXsdFile("src/test/resources/pattern.xsd", "codes", BOTH);
+        var validator = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .newSchema(new File("src/test/resources/pattern.xsd"))
+                .newValidator();
+
+        var random = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            var xml = patterns.generator(1).next(random).value();
+            validator.validate(new StreamSource(new ByteArrayInputStream(xml)));
+        }
+    }
+
+    @Test
+    void shouldGeneratePatternValuesWithinLengthFacets() {
+        var generator = XmlArbitraries.generator("src/test/resources/pattern.xsd", "codes", BOTH);
+        for (long seed = 0; seed < 50; seed++) {
+            var xml = new String(generator.generate(seed), StandardCharsets.UTF_8);
+            assertThat(xml).containsPattern("<word>[a-z]{12}</word>")
+                    .containsPattern("<longCode>[A-Z]{2}\\p{Nd}{4}-[a-z]{3,7}</longCode>");
+        }
+
+        var unsatisfiable = XmlArbitraries.generator("src/test/resources/unsatisfiable.xsd", "pin", BOTH);
+        assertThatThrownBy(() -> unsatisfiable.generate(0))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("patterns and facets");
+    }
+
+    @Test
+    void shouldGenerateNumbersWithinFacets() throws Exception {
+        var numbers = XmlArbitraries.fromXsdFile("src/test/resources/numbers.xsd", "numbers", BOTH);
+        var validator = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .newSchema(new File("src/test/resources/numbers.xsd"))
+                .newValidator();
+
+        var random = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            var xml = numbers.generator(1).next(random).value();
+            validator.validate(new StreamSource(new ByteArrayInputStream(xml)));
+        }
+    }
+
+    @Test
+    void shouldGenerateDatesWithinFacets() throws Exception {
+        var dates = XmlArbitraries.fromXsdFile("src/test/resources/dates.xsd", "dates", BOTH);
+        var validator = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .newSchema(new File("src/test/resources/dates.xsd"))
+                .newValidator();
+
+        var random = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            var xml = dates.generator(1).next(random).value();
+            validator.validate(new StreamSource(new ByteArrayInputStream(xml)));
+        }
+    }
+
+    @Test
+    void shouldGenerateSameDatesForSameSeed() {
+        var generator = XmlArbitraries.generator("src/test/resources/dates.xsd", "dates", BOTH);
+
+        assertThat(generator.generate(42)).isEqualTo(generator.generate(42));
+    }
+
+    @Test
+    void shouldUseBoundValueProviders() {
+        var config = new XSConfig();
+        config.valueProviders = XSValueProviders.builder()
+                .bindElement(new QName("country"), XmlArbitraries.valueProvider(Arbitraries.of("DE", "FR")))
+                .bindAttribute(new QName("orderid"), random -> "ORD-" + random.random(1000, 9999))
+                .bindType(new QName(XMLConstants.W3C_XML_SCHEMA_NS_URI, "decimal"), random -> "9.99")
+                .build();
+        var generator = XmlArbitraries.generator("src/test/resources/example.xsd", "shiporder", config);
+
+        for (long seed = 0; seed < 20; seed++) {
+            var xml = new String(generator.generate(seed), StandardCharsets.UTF_8);
+            assertThat(xml).containsPattern("<country>(DE|FR)</country>")
+                    .containsPattern("orderid=\"ORD-\\d{4}\"")
+                    .contains("<price>9.99</price>")
+                    .isEqualTo(new String(generator.generate(seed), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void shouldNotBindTypesRestrictedWithFacets() throws Exception {
+        var config = new XSConfig();
+        config.generateAllChoices = false;
+        config.valueProviders = XSValueProviders.builder()
+                .bindType(new QName(XMLConstants.W3C_XML_SCHEMA_NS_URI, "string"), random -> "not a code")
+                .bindType(new QName("code"), random -> "AB1234-bound")
+                .build();
+        var generator = XmlArbitraries.generator("src/test/resources/pattern.xsd", "codes", config);
+        var validator = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .newSchema(new File("src/test/resources/pattern.xsd"))
+                .newValidator();
+
+        for (long seed = 0; seed < 20; seed++) {
+            var xml = generator.generate(seed);
+            validator.validate(new StreamSource(new ByteArrayInputStream(xml)));
+            assertThat(new String(xml, StandardCharsets.UTF_8))
+                    .contains("<code>AB1234-bound</code>")
+                    .doesNotContain("<shortCode>AB1234-bound</shortCode>")
+                    .doesNotContain("not a code");
+        }
+    }
+
+    @Test
+    void shouldGenerateSameDocumentForSeedInAnyOrder() throws Exception {
+        var schema = SchemaCache.getDefault().get("src/test/resources/example.xsd");
+        var config = new XSConfig();
+
+        var forward = new ArrayList<byte[]>();
+        for (long seed = 0; seed < 20; seed++) {
+            forward.add(XmlArbitraries.generate(schema, "shiporder", config, seed));
+        }
+        var pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int seed = 19; seed >= 0; seed--) {
+                long s = seed;
+                var xml = pool.submit(() -> XmlArbitraries.generate(schema, "shiporder", config, s)).get();
+                assertThat(xml).isEqualTo(forward.get(seed));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertThat(schema.generator(new QName("shiporder"), config))
+                .isSameAs(schema.generator(new QName("shiporder"), config));
+        assertThat(forward.get(0)).isNotEqualTo(forward.get(1));
+    }
+
+    @Test
+    void shouldGenerateValidDocumentsOfTargetNamespace() throws Exception {
+        var schema = SchemaCache.getDefault().get("src/test/resources/namespaces.xsd");
+        var generator = schema.generator(new QName("urn:example:orders", "order", "o"), new XSConfig());
+        var validator = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .newSchema(new File("src/test/resources/namespaces.xsd"))
+                .newValidator();
+
+        for (long seed = 0; seed < 50; seed++) {
+            var xml = generator.generate(seed);
+            validator.validate(new StreamSource(new ByteArrayInputStream(xml)));
+            assertThat(new String(xml, StandardCharsets.UTF_8))
+                    .startsWith("<o:order number=")
+                    .doesNotContain("xmlns=\"\"")
+                    .containsOnlyOnce("xmlns:o=\"urn:example:orders\"");
+        }
+    }
+
+    @Test
+    void shouldEnumerateAllDocumentsOfSmallSchema() throws Exception {
+        var config = new XSConfig();
+        config.generateAllChoices = false;
+        var arbitrary = XmlArbitraries.exhaustiveFromXsdFile("src/test/resources/config.xsd", "config", config);
+        var validator = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .newSchema(new File("src/test/resources/config.xsd"))
+                .newValidator();
+
+        // 3 modes, debug absent, false or true, 2 choices, 1 or 2 servers, version absent or present
+        var exhaustive = arbitrary.exhaustive(100).orElseThrow();
+        var documents = new HashSet<String>();
+        for (byte[] xml : exhaustive) {
+            validator.validate(new StreamSource(new ByteArrayInputStream(xml)));
+            documents.add(new String(xml, StandardCharsets.UTF_8));
+        }
+
+        assertThat(exhaustive.maxCount()).isEqualTo(72);
+        assertThat(documents).hasSize(72);
+        assertThat(arbitrary.exhaustive(71)).isEmpty();
+    }
+
+    @Test
+    void shouldEnumerateOnlyDocumentsWithoutPinnedValues() {
+        var config = new XSConfig();
+        config.generateAllChoices = false;
+        // the port would always be 1024
+        assertThat(XmlArbitraries.fromXsdFile("src/test/resources/config.xsd", "config", config).exhaustive(100))
+                .isEmpty();
+
+        // 2 levels, 1 or 2 booleans
+        var exhaustive = XmlArbitraries.fromXsdFile("src/test/resources/switches.xsd", "switches", config)
+                .exhaustive(100).orElseThrow();
+        var documents = new HashSet<String>();
+        exhaustive.forEach(xml -> documents.add(new String(xml, StandardCharsets.UTF_8)));
+
+        assertThat(exhaustive.maxCount()).isEqualTo(12);
+        assertThat(documents).hasSize(12);
+    }
+
+    @Test
+    void shouldProvideMinimalAndMaximalDocumentsAsEdgeCases() throws Exception {
+        var config = new XSConfig();
+        config.generateAllChoices = false;
+        var arbitrary = XmlArbitraries.fromXsdFile("src/test/resources/config.xsd", "config", config);
+        var validator = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .newSchema(new File("src/test/resources/config.xsd"))
+                .newValidator();
+
+        var edgeCases = new ArrayList<String>();
+        for (var edgeCase : arbitrary.edgeCases(10)) {
+            validator.validate(new StreamSource(new ByteArrayInputStream(edgeCase.value())));
+            edgeCases.add(new String(edgeCase.value(), StandardCharsets.UTF_8));
+        }
+
+        // the minimal document has no values with bounds, so mixing it with maximal values adds nothing
+        assertThat(edgeCases).hasSize(3);
+        assertThat(edgeCases.get(0)).contains("<mode>development</mode>", "<socket>")
+                .doesNotContain("<debug>", "version=")
+                .containsOnlyOnce("<server>");
+        assertThat(edgeCases.get(1)).contains("<mode>production</mode>", "<debug>true</debug>", "<port>65535</port>", "version=")
+                .containsPattern("(?s)<server>.*<server>");
+        assertThat(edgeCases.get(2)).contains("<port>1024</port>");
+        assertThat(arbitrary.edgeCases(1)).hasSize(1);
+    }
+
+    @Test
+    void shouldProvideValidEdgeCasesOfFacets() throws Exception {
+        for (var schema : new String[][]{{"numbers", "numbers"}, {"dates", "dates"}, {"pattern", "codes"}}) {
+            var xsdFile = "src/test/resources/" + schema[0] + ".xsd";
+            var validator = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                    .newSchema(new File(xsdFile))
+                    .newValidator();
+            var edgeCases = XmlArbitraries.fromXsdFile(xsdFile, schema[1], BOTH).edgeCases(10);
+
+            assertThat(edgeCases.size()).isGreaterThan(1);
+            for (var edgeCase : edgeCases) {
+                validator.validate(new StreamSource(new ByteArrayInputStream(edgeCase.value())));
+            }
+        }
+    }
+
+    @Test
+    void shouldGenerateCompactDocumentsInMachineMode() {
+        var generator = XmlArbitraries.generator("src/test/resources/example.xsd", "shiporder", XmlArbitraries.machineMode());
+
+        var xml = new String(generator.generate(3), StandardCharsets.UTF_8);
+
+        assertThat(xml).startsWith("<shiporder").doesNotContain("\n").doesNotContain("<!--");
+    }
+
+    @Test
+    void shouldCommentContentModelOnlyIfRequested() {
+        var config = new XSConfig();
+        var plain = XmlArbitraries.generator("src/test/resources/example.xsd", "shiporder", config);
+        config = new XSConfig();
+        config.showContentModel = true;
+        var commented = XmlArbitraries.generator("src/test/resources/example.xsd", "shiporder", config);
+
+        assertThat(new String(plain.generate(3), StandardCharsets.UTF_8)).doesNotContain("<!--");
+        assertThat(new String(commented.generate(3), StandardCharsets.UTF_8))
+                .contains("<!--(title , note? , quantity , price)-->");
+    }
+
+    @Test
+    void shouldGenerateIntoBufferWithoutCopy() {
+        var generator = XmlArbitraries.generator("src/test/resources/dates.xsd", "dates", BOTH);
+
+        var buffer = generator.generateBuffer(5);
+        var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+
+        assertThat(bytes).isEqualTo(generator.generate(5));
+        assertThat(buffer.isReadOnly()).isTrue();
+    }
+
+    @Test
+    void shouldGenerateBatchInSeedOrder() {
+        var generator = XmlArbitraries.generator("src/test/resources/example.xsd", "shiporder", BOTH);
+
+        var batch = generator.generate(7, 50);
+
+        assertThat(batch).hasSize(50);
+        for (int i = 0; i < batch.size(); i++) {
+            assertThat(batch.get(i)).isEqualTo(generator.generate(XmlGenerator.seed(7, i)));
+        }
+    }
+
+    @Test
+    void shouldKeepRecursiveDocumentsWithinBudget() throws Exception {
+        var config = new XSConfig();
+        config.generateAllChoices = false;
+        config.generateOptionalAttributesAsEmptyString = false;
+        config.maximumTotalElements = 50;
+        var recursive = XmlArbitraries.fromXsdFile("src/test/resources/recursive.xsd", "book", config);
+        var validator = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .newSchema(new File("src/test/resources/recursive.xsd"))
+                .newValidator();
+
+        var random = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            var xml = recursive.generator(1).next(random).value();
+            validator.validate(new StreamSource(new ByteArrayInputStream(xml)));
+            assertThat(new String(xml, StandardCharsets.UTF_8).split("<\\w", -1).length - 1).isLessThanOrEqualTo(50);
+        }
+    }
+
+    @Test
+    void shouldDispatchToMostSpecificProcessMethod() {
+        var visitor = new NameVisitor();
+        assertThat(visitor.visit(1)).isEqualTo("Integer");
+        assertThat(visitor.visit(1L)).isEqualTo("Number");
+        assertThat(visitor.visit("text")).isEqualTo("CharSequence");
+        assertThat(visitor.visit(new StringBuilder())).isEqualTo("CharSequence");
+        assertThat(visitor.visit(new Object())).isEqualTo("default");
+        assertThat(visitor.visit(null)).isEqualTo("default");
+
+        var subclass = new LongNameVisitor();
+        assertThat(subclass.visit(1L)).isEqualTo("Long");
+        assertThat(subclass.visit(1)).isEqualTo("Integer");
+        assertThat(subclass.visit(1.5)).isEqualTo("Number");
+    }
+
+    static class NameVisitor extends ReflectionVisitor<Object, String> {
+        @Override
+        protected String getDefault(Object elem) {
+            return "default";
+        }
+
+        private String process(Number number) {
+            return "Number";
+        }
+
+        private String process(Integer number) {
+            return "Integer";
+        }
+
+        private String process(CharSequence chars) {
+            return "CharSequence";
+        }
+    }
+
+    static class LongNameVisitor extends NameVisitor {
+        private String process(Long number) {
+            return "Long";
+        }
+    }
 }